@@ -0,0 +1,26 @@
+package org.mobicents.qa.report.vmstat;
+
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.Range;
+
+/**
+ * Creates the chart of a report page, either for the whole capture or for a slice of its timeline.
+ */
+public interface ChartBuilder {
+
+    /**
+     * @return the x range covered by the data, or null if there is no data
+     */
+    Range getDomainBounds();
+
+    /**
+     * Creates a chart with the whole data set and automatic axes.
+     */
+    JFreeChart createChart();
+
+    /**
+     * Creates a chart containing only the data between fromX and toX. The range axis must be the same for every slice so that consecutive tiles
+     * can be compared.
+     */
+    JFreeChart createChart(double fromX, double toX);
+}
@@ -0,0 +1,144 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.encoders.ImageEncoder;
+import org.jfree.chart.encoders.KeypointPNGEncoderAdapter;
+import org.jfree.data.Range;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Image;
+import com.lowagie.text.Rectangle;
+
+/**
+ * Renders charts into pages of the report document and, optionally, into png files.
+ *
+ * A single image buffer is reused for every page. When tiling is enabled each chart is split in tiles of tileSpan x units, so the memory used
+ * does not depend on the length of the capture. Each tile is written to the document (and png file) before the next one is drawn.
+ */
+public class ChartWriter {
+
+    private static Logger logger = Logger.getLogger(ChartWriter.class.getName());
+
+    private Document document;
+    private ReportProfiler profiler;
+
+    private int imageSizeX;
+    private int imageSizeY;
+    private BufferedImage image;
+
+    private double tileSpan;
+
+    private String pngDirName;
+
+    private ImageEncoder encoder = new KeypointPNGEncoderAdapter();
+
+    /**
+     * @param tileSpan
+     *            x units covered by each tile, or 0 to draw each chart in a single page
+     * @param pngDirName
+     *            folder where png files are written, or null to skip them
+     */
+    public ChartWriter(Document document, ReportProfiler profiler, int imageSizeX, int imageSizeY, double tileSpan, String pngDirName) {
+        this.document = document;
+        this.profiler = profiler;
+        this.tileSpan = tileSpan;
+        this.pngDirName = pngDirName;
+        setImageSize(imageSizeX, imageSizeY);
+
+        if (pngDirName != null) {
+            new File(pngDirName).mkdir();
+        }
+    }
+
+    /**
+     * Changes the size of the pages written from now on.
+     */
+    public void setImageSize(int imageSizeX, int imageSizeY) {
+        if (image != null && imageSizeX == this.imageSizeX && imageSizeY == this.imageSizeY) {
+            return;
+        }
+        this.imageSizeX = imageSizeX;
+        this.imageSizeY = imageSizeY;
+        this.image = null; // allocated on first use
+        document.setPageSize(new Rectangle(imageSizeX, imageSizeY));
+    }
+
+    public void write(String name, ChartBuilder builder) throws DocumentException, IOException {
+        Range bounds = builder.getDomainBounds();
+        if (tileSpan <= 0 || bounds == null || bounds.getLength() <= tileSpan) {
+            profiler.start("render");
+            JFreeChart chart = builder.createChart();
+            draw(chart);
+            profiler.stop("render", 1, "charts");
+
+            writeImage(name);
+            return;
+        }
+
+        int tiles = (int) Math.ceil(bounds.getLength() / tileSpan);
+        for (int tile = 0; tile < tiles; tile++) {
+            double fromX = bounds.getLowerBound() + tile * tileSpan;
+            double toX = fromX + tileSpan;
+
+            profiler.start("render");
+            JFreeChart chart = builder.createChart(fromX, toX);
+            draw(chart);
+            profiler.stop("render", 1, "charts");
+
+            writeImage(name + "-" + (tile + 1));
+        }
+        logger.debug("Wrote " + tiles + " tiles for chart " + name);
+    }
+
+    private void draw(JFreeChart chart) {
+        if (image == null) {
+            image = new BufferedImage(imageSizeX, imageSizeY, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setBackground(Color.WHITE);
+            g2.clearRect(0, 0, imageSizeX, imageSizeY);
+            chart.draw(g2, new Rectangle2D.Double(0, 0, imageSizeX, imageSizeY));
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private void writeImage(String name) throws DocumentException, IOException {
+        profiler.start("pdf");
+        document.newPage();
+        document.add(Image.getInstance(image, null));
+        profiler.stop("pdf", 1, "pages");
+        logger.debug("Wrote chart " + name);
+
+        if (pngDirName != null) {
+            profiler.start("png");
+            String chartFile = pngDirName + File.separator + toFileName(name) + ".png";
+            FileOutputStream fos = new FileOutputStream(chartFile);
+            try {
+                encoder.encode(image, fos);
+            } finally {
+                fos.close();
+            }
+            profiler.stop("png", 1, "images");
+            logger.debug("Wrote chart to file " + chartFile);
+        }
+    }
+
+    /**
+     * Removes the characters of a category name that are not allowed in file names (like the '/' in "YGC#d/dt").
+     */
+    public static String toFileName(String name) {
+        return name.replaceAll("[^a-zA-Z0-9%._-]", "");
+    }
+}
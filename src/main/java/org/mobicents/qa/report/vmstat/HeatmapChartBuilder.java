@@ -0,0 +1,141 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.awt.Color;
+import java.awt.Paint;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.PaintScale;
+import org.jfree.chart.renderer.xy.XYBlockRenderer;
+import org.jfree.chart.title.PaintScaleLegend;
+import org.jfree.data.Range;
+import org.jfree.data.xy.DefaultXYZDataset;
+import org.jfree.ui.RectangleAnchor;
+import org.jfree.ui.RectangleEdge;
+
+/**
+ * Builds a heatmap chart from a {@link HeatmapGrid}: x is time, y is value and the color is the number of samples. The chart size does not
+ * depend on the length of the capture, so it is never split in tiles.
+ */
+public class HeatmapChartBuilder implements ChartBuilder {
+
+    /**
+     * White for empty buckets, then from blue to red on a log scale of the count.
+     */
+    private static class CountPaintScale implements PaintScale {
+        private double upperBound;
+
+        CountPaintScale(double upperBound) {
+            this.upperBound = Math.max(upperBound, 1);
+        }
+
+        public double getLowerBound() {
+            return 0;
+        }
+
+        public double getUpperBound() {
+            return upperBound;
+        }
+
+        public Paint getPaint(double value) {
+            if (value <= 0) {
+                return Color.WHITE;
+            }
+            double ratio = upperBound > 1 ? Math.log(Math.min(value, upperBound)) / Math.log(upperBound) : 1;
+            return Color.getHSBColor((float) (0.66 * (1 - ratio)), 0.9f, 0.9f);
+        }
+    }
+
+    private String title;
+    private String xLabel;
+    private String yLabel;
+    private HeatmapGrid grid;
+
+    public HeatmapChartBuilder(String title, String xLabel, String yLabel, HeatmapGrid grid) {
+        this.title = title;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+        this.grid = grid;
+    }
+
+    public Range getDomainBounds() {
+        return null;
+    }
+
+    public JFreeChart createChart(double fromX, double toX) {
+        return createChart();
+    }
+
+    public JFreeChart createChart() {
+        int cells = 0;
+        int minBucket = grid.getValueBucketCount();
+        int maxBucket = -1;
+        for (int t = 0; t < grid.getTimeBucketCount(); t++) {
+            for (int v = 0; v < grid.getValueBucketCount(); v++) {
+                if (grid.getCount(t, v) > 0) {
+                    cells++;
+                    minBucket = Math.min(minBucket, v);
+                    maxBucket = Math.max(maxBucket, v);
+                }
+            }
+        }
+
+        double[][] data = new double[3][cells];
+        int n = 0;
+        for (int t = 0; t < grid.getTimeBucketCount(); t++) {
+            for (int v = 0; v < grid.getValueBucketCount(); v++) {
+                int count = grid.getCount(t, v);
+                if (count > 0) {
+                    data[0][n] = grid.getTime(t);
+                    data[1][n] = grid.getValue(v);
+                    data[2][n] = count;
+                    n++;
+                }
+            }
+        }
+        DefaultXYZDataset dataset = new DefaultXYZDataset();
+        dataset.addSeries(yLabel, data);
+
+        XYBlockRenderer renderer = new XYBlockRenderer();
+        renderer.setBlockWidth(grid.getTimeWidth());
+        renderer.setBlockHeight(grid.getValueHeight());
+        renderer.setBlockAnchor(RectangleAnchor.BOTTOM_LEFT);
+        CountPaintScale paintScale = new CountPaintScale(grid.getMaxCount());
+        renderer.setPaintScale(paintScale);
+
+        // the buckets may be wider than requested, for long captures
+        String width = new DecimalFormat("#,##0.###", new DecimalFormatSymbols(Locale.US)).format(grid.getTimeWidth());
+        NumberAxis xAxis = new NumberAxis(xLabel + " (buckets of " + width + " s)");
+        xAxis.setLowerMargin(0);
+        xAxis.setUpperMargin(0);
+        if (grid.getTimeBucketCount() > 0) {
+            xAxis.setRange(grid.getTime(0), grid.getTime(grid.getTimeBucketCount()));
+        }
+        NumberAxis yAxis = new NumberAxis(grid.isLogScale() ? "log10(" + yLabel + ")" : yLabel);
+        yAxis.setAutoRangeIncludesZero(false);
+        if (maxBucket >= 0) {
+            yAxis.setRange(grid.getValue(minBucket), grid.getValue(maxBucket) + grid.getValueHeight());
+        }
+
+        XYPlot plot = new XYPlot(dataset, xAxis, yAxis, renderer);
+        plot.setBackgroundPaint(Color.WHITE);
+        plot.setDomainGridlinesVisible(false);
+        plot.setRangeGridlinePaint(Color.LIGHT_GRAY);
+
+        JFreeChart chart = new JFreeChart(title, JFreeChart.DEFAULT_TITLE_FONT, plot, false);
+        ChartUtilities.applyCurrentTheme(chart);
+        plot.setBackgroundPaint(Color.WHITE);
+
+        PaintScaleLegend legend = new PaintScaleLegend(paintScale, new NumberAxis("samples"));
+        legend.setPosition(RectangleEdge.RIGHT);
+        legend.setStripWidth(15);
+        legend.setMargin(50, 10, 50, 10);
+        chart.addSubtitle(legend);
+        return chart;
+    }
+}
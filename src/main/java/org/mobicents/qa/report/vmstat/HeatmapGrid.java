@@ -0,0 +1,232 @@
+package org.mobicents.qa.report.vmstat;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Distribution of the values of a category over time, built in a single pass with a bounded amount of memory.
+ *
+ * Each time bucket holds a histogram of the values. The number of time buckets is taken from the expected time span, up to
+ * {@value #MAX_TIME_BUCKETS} (or {@value #DEFAULT_TIME_BUCKETS} if the span is unknown). When the capture is longer than the grid the time
+ * buckets are merged two by two (so their width doubles, with a warning), and in linear mode the same is done with the value buckets when a
+ * value is above the top of the grid. In log mode the value buckets are fixed: {@value #BUCKETS_PER_DECADE} per decade from
+ * 10^{@value #MIN_EXPONENT} to 10^{@value #MAX_EXPONENT}, plus a bucket for zero and negative values. In linear mode the grid starts at the
+ * expected minimum (0 if unknown), values below it are counted in the first bucket.
+ */
+public class HeatmapGrid {
+
+    private static Logger logger = Logger.getLogger(HeatmapGrid.class.getName());
+
+    public static final int DEFAULT_TIME_BUCKETS = 1024;
+
+    // a week of 1 minute buckets
+    public static final int MAX_TIME_BUCKETS = 16384;
+
+    public static final int LINEAR_BUCKETS = 100;
+
+    public static final int BUCKETS_PER_DECADE = 10;
+    public static final int MIN_EXPONENT = -3;
+    public static final int MAX_EXPONENT = 12;
+    private static final int LOG_BUCKETS = (MAX_EXPONENT - MIN_EXPONENT) * BUCKETS_PER_DECADE + 1;
+
+    private boolean logScale;
+
+    private int valueBuckets;
+
+    private int timeBuckets = DEFAULT_TIME_BUCKETS;
+
+    // counts[timeBucket * valueBuckets + valueBucket]
+    private int[] counts;
+
+    private double timeOrigin = Double.NaN;
+    private double timeWidth;
+    private int usedTimeBuckets = 0;
+
+    private double valueOrigin = 0;
+    private double valueWidth;
+
+    private int maxCount = 0;
+
+    private long samples = 0;
+
+    /**
+     * @param timeWidth
+     *            initial width of the time buckets, in seconds
+     */
+    public HeatmapGrid(double timeWidth, boolean logScale) {
+        this.timeWidth = timeWidth;
+        this.logScale = logScale;
+        this.valueBuckets = logScale ? LOG_BUCKETS : LINEAR_BUCKETS;
+        this.valueWidth = 1.0 / LINEAR_BUCKETS;
+        this.counts = new int[timeBuckets * valueBuckets];
+    }
+
+    /**
+     * Linear grid spread over the expected range of values, so categories with a large offset (like free memory) use all the value
+     * buckets.
+     */
+    public HeatmapGrid(double timeWidth, double minValue, double maxValue) {
+        this(timeWidth, false);
+        double range = maxValue - minValue;
+        if (range > 0) {
+            valueOrigin = minValue;
+            // the maximum falls in the last bucket
+            valueWidth = range / (LINEAR_BUCKETS - 1);
+        } else if (!Double.isNaN(range)) {
+            // a constant, in the middle of the grid
+            valueWidth = (minValue != 0 ? Math.abs(minValue) : 1.0) / LINEAR_BUCKETS;
+            valueOrigin = minValue - valueWidth * LINEAR_BUCKETS / 2;
+        }
+    }
+
+    /**
+     * Sizes the grid for the given time span, so the buckets keep the requested width. Call it before adding values.
+     */
+    public void expectTimeSpan(double seconds) {
+        if (samples > 0 || Double.isNaN(seconds) || Double.isInfinite(seconds) || seconds < 0) {
+            return;
+        }
+        double requestedWidth = timeWidth;
+        while (seconds / timeWidth + 1 > MAX_TIME_BUCKETS) {
+            timeWidth *= 2;
+        }
+        if (timeWidth != requestedWidth) {
+            logger.warn("Heatmap buckets of " + requestedWidth + " s would be more than " + MAX_TIME_BUCKETS + ", using buckets of " + timeWidth
+                    + " s");
+        }
+        timeBuckets = Math.max((int) Math.ceil(seconds / timeWidth) + 1, 1);
+        counts = new int[timeBuckets * valueBuckets];
+    }
+
+    public void add(double time, double value) {
+        if (Double.isNaN(value) || Double.isNaN(time) || Double.isInfinite(value) || Double.isInfinite(time)) {
+            return;
+        }
+        if (Double.isNaN(timeOrigin)) {
+            timeOrigin = time;
+        }
+
+        int timeBucket = (int) Math.floor((time - timeOrigin) / timeWidth);
+        while (timeBucket >= timeBuckets) {
+            mergeTimeBuckets();
+            timeBucket = (int) Math.floor((time - timeOrigin) / timeWidth);
+        }
+        timeBucket = Math.max(timeBucket, 0);
+        usedTimeBuckets = Math.max(usedTimeBuckets, timeBucket + 1);
+
+        int index = timeBucket * valueBuckets + valueBucket(value);
+        if (++counts[index] > maxCount) {
+            maxCount = counts[index];
+        }
+        samples++;
+    }
+
+    private int valueBucket(double value) {
+        if (logScale) {
+            if (value <= 0) {
+                return 0;
+            }
+            int bucket = (int) Math.floor((Math.log10(value) - MIN_EXPONENT) * BUCKETS_PER_DECADE) + 1;
+            return Math.min(Math.max(bucket, 1), valueBuckets - 1);
+        }
+
+        while (value - valueOrigin >= valueWidth * valueBuckets) {
+            mergeValueBuckets();
+        }
+        return Math.max((int) Math.floor((value - valueOrigin) / valueWidth), 0);
+    }
+
+    private void mergeTimeBuckets() {
+        // an odd last bucket is merged alone
+        int merged = (timeBuckets + 1) / 2;
+        for (int t = 0; t < merged; t++) {
+            for (int v = 0; v < valueBuckets; v++) {
+                int count = counts[2 * t * valueBuckets + v];
+                if (2 * t + 1 < timeBuckets) {
+                    count += counts[(2 * t + 1) * valueBuckets + v];
+                }
+                counts[t * valueBuckets + v] = count;
+            }
+        }
+        for (int i = merged * valueBuckets; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        timeWidth *= 2;
+        logger.warn("Heatmap longer than " + timeBuckets + " buckets, using buckets of " + timeWidth + " s");
+        usedTimeBuckets = (usedTimeBuckets + 1) / 2;
+        updateMaxCount();
+    }
+
+    private void mergeValueBuckets() {
+        for (int t = 0; t < usedTimeBuckets; t++) {
+            int base = t * valueBuckets;
+            for (int v = 0; v < valueBuckets / 2; v++) {
+                counts[base + v] = counts[base + 2 * v] + counts[base + 2 * v + 1];
+            }
+            for (int v = valueBuckets / 2; v < valueBuckets; v++) {
+                counts[base + v] = 0;
+            }
+        }
+        valueWidth *= 2;
+        updateMaxCount();
+    }
+
+    private void updateMaxCount() {
+        maxCount = 0;
+        for (int count : counts) {
+            maxCount = Math.max(maxCount, count);
+        }
+    }
+
+    public boolean isLogScale() {
+        return logScale;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public int getTimeBucketCount() {
+        return usedTimeBuckets;
+    }
+
+    public int getValueBucketCount() {
+        return valueBuckets;
+    }
+
+    public int getCount(int timeBucket, int valueBucket) {
+        return counts[timeBucket * valueBuckets + valueBucket];
+    }
+
+    public double getTimeWidth() {
+        return timeWidth;
+    }
+
+    /**
+     * @return the start time of the bucket, in seconds
+     */
+    public double getTime(int timeBucket) {
+        return timeOrigin + timeBucket * timeWidth;
+    }
+
+    /**
+     * @return the height of a value bucket, in values (linear) or in log10 of values (log)
+     */
+    public double getValueHeight() {
+        return logScale ? 1.0 / BUCKETS_PER_DECADE : valueWidth;
+    }
+
+    /**
+     * @return the bottom of the bucket, as a value (linear) or as log10 of a value (log). The bucket for zero and negative values is drawn below
+     *         10^{@value #MIN_EXPONENT}.
+     */
+    public double getValue(int valueBucket) {
+        if (logScale) {
+            return MIN_EXPONENT + (valueBucket - 1) * getValueHeight();
+        }
+        return valueOrigin + valueBucket * valueWidth;
+    }
+}
@@ -0,0 +1,28 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * A kind of statistics file (vmstat, jstat, mpstat, ...) that can be turned into a {@link SampleTable}.
+ *
+ * Implementations must stream the file: each line is converted into numbers and added to the table as soon as it is read. New formats are
+ * plugged in with {@link InputFormats#register(InputFormat)}.
+ */
+public interface InputFormat {
+
+    String getName();
+
+    /**
+     * @param head
+     *            the first lines of the file
+     * @return true if this format can read the file
+     */
+    boolean accepts(List<String> head);
+
+    /**
+     * Reads the whole file into the table.
+     */
+    void read(Reader reader, SampleTable table) throws IOException;
+}
@@ -0,0 +1,106 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Registry of the known input formats. Detects the format of a file and reads it.
+ */
+public class InputFormats {
+
+    private static Logger logger = Logger.getLogger(InputFormats.class.getName());
+
+    private static final int HEAD_LINES = 32;
+
+    private static final int HEAD_SIZE = 64 * 1024;
+
+    private static List<InputFormat> formats = new ArrayList<InputFormat>();
+
+    static {
+        formats.add(new VmstatFormat());
+        formats.add(new IostatFormat());
+        formats.add(new PidstatFormat());
+        formats.add(new MpstatFormat());
+        formats.add(new SarFormat());
+        // accepts any file with a header line, must be the last one
+        formats.add(new JstatFormat());
+    }
+
+    /**
+     * Adds a format. It is checked before the built-in ones.
+     */
+    public static synchronized void register(InputFormat format) {
+        formats.add(0, format);
+    }
+
+    public static synchronized List<InputFormat> getFormats() {
+        return new ArrayList<InputFormat>(formats);
+    }
+
+    /**
+     * Detects the format of the file and reads it into a table.
+     *
+     * @param period
+     *            seconds between samples, for formats without timestamps
+     */
+    public static SampleTable read(String filename, double period) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        try {
+            reader.mark(HEAD_SIZE);
+            List<String> head = new ArrayList<String>();
+            int size = 0;
+            for (String line; head.size() < HEAD_LINES && (line = reader.readLine()) != null;) {
+                size += line.length() + 2;
+                if (size >= HEAD_SIZE) {
+                    break;
+                }
+                head.add(line);
+            }
+            reader.reset();
+
+            if (head.isEmpty()) {
+                throw new IOException("Empty file: " + filename);
+            }
+
+            InputFormat format = detect(head);
+            if (format == null) {
+                throw new IOException("Unknown file format: " + filename);
+            }
+            logger.debug("File " + filename + " detected as " + format.getName());
+
+            SampleTable table = new SampleTable(period);
+            table.setFormatName(format.getName());
+            format.read(reader, table);
+            table.trim();
+            return table;
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static InputFormat detect(List<String> head) {
+        for (InputFormat format : getFormats()) {
+            if (format.accepts(head)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the first line that is not blank, or null
+     */
+    static String firstLine(List<String> head) {
+        for (String line : head) {
+            if (line.trim().length() > 0) {
+                return line;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+package org.mobicents.qa.report.vmstat;
+
+/**
+ * Output of 'iostat -x [-t]'. Cpu values go to columns like "cpu.%iowait", device values to columns like "sda.await". Without -t each report
+ * is period seconds after the previous one.
+ */
+public class IostatFormat extends SysstatFormat {
+
+    public String getName() {
+        return "iostat";
+    }
+
+    protected boolean acceptsHeader(String[] header) {
+        return header[0].equals("avg-cpu:") || header[0].startsWith("Device");
+    }
+}
@@ -0,0 +1,55 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Output of 'jstat -option -t'. Also used for any other file with a single header line followed by space separated values. Headers repeated
+ * by 'jstat -h' are ignored.
+ *
+ * With '-t' the rows are placed by the Timestamp column (uptime of the JVM), so the sampling interval of jstat does not need to match the
+ * period of the tool. Otherwise the rows are one period apart.
+ */
+public class JstatFormat implements InputFormat {
+
+    public String getName() {
+        return "jstat";
+    }
+
+    public boolean accepts(List<String> head) {
+        return InputFormats.firstLine(head) != null;
+    }
+
+    public void read(Reader reader, SampleTable table) throws IOException {
+        OpenCsvReader csv = new OpenCsvReader(reader, ' ', '\"');
+
+        String[] categories = null;
+        double firstTimestamp = Double.NaN;
+        for (String[] line; (line = csv.readNext()) != null;) {
+            if (line.length == 0) {
+                continue;
+            }
+            if (categories == null) {
+                categories = line;
+                continue;
+            }
+            if (line[0].equals(categories[0])) {
+                continue;
+            }
+
+            double timestamp = categories[0].equals("Timestamp") ? SampleTable.parse(line[0]) : Double.NaN;
+            if (Double.isNaN(timestamp)) {
+                table.addRow();
+            } else {
+                if (Double.isNaN(firstTimestamp)) {
+                    firstTimestamp = timestamp;
+                }
+                table.row(timestamp - firstTimestamp, -1);
+            }
+            for (int i = 0; i < categories.length && i < line.length; i++) {
+                table.set(categories[i], line[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.jfree.data.xy.DefaultXYDataset;
+import org.jfree.data.xy.XYDataset;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+
+/**
+ * Derives the memory dynamics of a JVM from the columns of 'jstat -gc', '-gcnew' or '-gccause': allocation rate, promotion rate, survivor
+ * occupancy and projected time to the next full GC.
+ *
+ * Eden and old usage drop at each collection, so the amounts are computed per interval between samples using the GC counters:
+ * <ul>
+ * <li>allocated: growth of eden if there was no GC, otherwise what was left of eden before the GC plus eden usage after it (plus a whole eden
+ * for each extra GC in the interval)</li>
+ * <li>promoted: growth of old space in intervals with young GCs only. Intervals with full GCs are left out</li>
+ * <li>time to full GC: free old space divided by the growth rate of old space over the last {@value #WINDOW} seconds</li>
+ * </ul>
+ * '-gccause' only prints percentages, in that case the rates are in % of the space per second.
+ */
+public class JvmMemoryAnalysis {
+
+    public static final double WINDOW = 60;
+
+    private static final String[] summaryHeaders = new String[] { "Metric", "Unit", "Sustained", "Peak" };
+
+    private double[] referenceData;
+
+    private Map<String, XYDataset> charts = new LinkedHashMap<String, XYDataset>();
+    private Map<String, String> titles = new HashMap<String, String>();
+    private Map<String, double[]> values = new LinkedHashMap<String, double[]>();
+
+    private List<String[]> summary = new ArrayList<String[]>();
+
+    private NumberFormat formatter = new DecimalFormat("#,##0.00", new DecimalFormatSymbols(Locale.US));
+
+    /**
+     * @return true if the table has the columns needed to calculate at least the allocation rate
+     */
+    public static boolean isApplicable(SampleTable table) {
+        return column(table, "YGC") != null && (column(table, "EU") != null || column(table, "E") != null);
+    }
+
+    private static double[] column(SampleTable table, String name) {
+        int index = table.indexOf(name);
+        return index >= 0 && table.isNumeric(index) ? table.getValues(index) : null;
+    }
+
+    /**
+     * @param referenceData
+     *            x values of the charts
+     */
+    public JvmMemoryAnalysis(SampleTable table, double[] referenceData) {
+        this.referenceData = referenceData;
+
+        int rows = table.getRowCount();
+        double[] time = column(table, "Timestamp") != null ? column(table, "Timestamp") : table.getTime();
+        double[] ygc = column(table, "YGC");
+        double[] fgc = column(table, "FGC");
+
+        // Eden and old usage, in KB or in %
+        double[] eu = column(table, "EU");
+        double[] ec = eu != null ? column(table, "EC") : null;
+        boolean edenKB = eu != null;
+        if (eu == null) {
+            eu = column(table, "E");
+        }
+        double[] ou = column(table, "OU");
+        double[] oc = ou != null ? column(table, "OC") : null;
+        boolean oldKB = ou != null;
+        if (ou == null) {
+            ou = column(table, "O");
+        }
+
+        String edenUnit = edenKB ? "MB" : "% of eden";
+        String oldUnit = oldKB ? "MB" : "% of old";
+        double edenScale = edenKB ? 1 / 1024.0 : 1;
+        double oldScale = oldKB ? 1 / 1024.0 : 1;
+
+        double[] allocated = new double[rows];
+        double[] promoted = new double[rows];
+        double[] oldGrowth = new double[rows];
+        double[] promotedPerGC = new double[rows];
+        double[] allocationRate = new double[rows];
+        allocated[0] = 0;
+        promoted[0] = 0;
+        oldGrowth[0] = 0;
+        promotedPerGC[0] = Double.NaN;
+        allocationRate[0] = Double.NaN;
+
+        double totalTime = 0;
+        double totalAllocated = 0;
+        double totalPromoted = 0;
+        double promotionTime = 0;
+        double youngGCs = 0;
+        double fullGCs = 0;
+        double maxPromotedPerGC = Double.NaN;
+        double lastPromotedPerGC = Double.NaN;
+
+        for (int n = 1; n < rows; n++) {
+            double dt = time[n] - time[n - 1];
+            double young = ygc[n] - ygc[n - 1];
+            double full = fgc != null ? fgc[n] - fgc[n - 1] : 0;
+            if (!(dt > 0) || Double.isNaN(young) || Double.isNaN(full)) {
+                allocated[n] = 0;
+                promoted[n] = 0;
+                oldGrowth[n] = 0;
+                promotedPerGC[n] = lastPromotedPerGC;
+                allocationRate[n] = Double.NaN;
+                continue;
+            }
+            totalTime += dt;
+            youngGCs += Math.max(young, 0);
+            fullGCs += Math.max(full, 0);
+
+            double edenCapacity = ec != null ? ec[n - 1] : 100;
+            double collections = Math.max(young, 0) + Math.max(full, 0);
+            double amount;
+            if (collections == 0 && eu[n] >= eu[n - 1]) {
+                amount = eu[n] - eu[n - 1];
+            } else {
+                // eden was emptied: what was left before the collection, what is used after, and full edens for the other collections
+                amount = Math.max(edenCapacity - eu[n - 1], 0) + eu[n] + Math.max(collections - 1, 0) * edenCapacity;
+            }
+            allocated[n] = Double.isNaN(amount) ? 0 : amount * edenScale;
+            allocationRate[n] = allocated[n] / dt;
+            totalAllocated += allocated[n];
+
+            if (ou != null && full <= 0) {
+                double growth = Math.max(ou[n] - ou[n - 1], 0) * oldScale;
+                oldGrowth[n] = Double.isNaN(growth) ? 0 : growth;
+                promoted[n] = young > 0 ? oldGrowth[n] : 0;
+                promotionTime += dt;
+                totalPromoted += promoted[n];
+                if (young > 0) {
+                    lastPromotedPerGC = promoted[n] / young;
+                    maxPromotedPerGC = Double.isNaN(maxPromotedPerGC) ? lastPromotedPerGC : Math.max(maxPromotedPerGC, lastPromotedPerGC);
+                }
+            } else {
+                oldGrowth[n] = 0;
+                promoted[n] = 0;
+            }
+            promotedPerGC[n] = lastPromotedPerGC;
+        }
+
+        double[] allocationWindowRate = windowRate(time, allocated);
+        addChart("allocation", "Allocation rate (" + edenUnit + "/s)", allocationRate);
+        addSummary("Allocation rate", edenUnit + "/s", totalTime > 0 ? totalAllocated / totalTime : Double.NaN, max(allocationWindowRate));
+
+        if (ou != null) {
+            double[] promotionRate = windowRate(time, promoted);
+            addChart("promotion", "Promotion rate, " + (int) WINDOW + " s window (" + oldUnit + "/s)", promotionRate);
+            addChart("promotion/YGC", "Promotion per young GC (" + oldUnit + ")", promotedPerGC);
+            addSummary("Promotion rate", oldUnit + "/s", promotionTime > 0 ? totalPromoted / promotionTime : Double.NaN, max(promotionRate));
+            addSummary("Promotion per young GC", oldUnit, youngGCs > 0 ? totalPromoted / youngGCs : Double.NaN, maxPromotedPerGC);
+
+            // time to fill the old space at the current growth rate
+            double[] oldGrowthRate = windowRate(time, oldGrowth);
+            double[] timeToFullGC = new double[rows];
+            double totalOldGrowth = 0;
+            for (int n = 0; n < rows; n++) {
+                double free = ((oc != null ? oc[n] : 100) - ou[n]) * oldScale;
+                timeToFullGC[n] = oldGrowthRate[n] > 0 ? Math.max(free, 0) / oldGrowthRate[n] : Double.NaN;
+                totalOldGrowth += oldGrowth[n];
+            }
+            double lastFree = ((oc != null ? oc[rows - 1] : 100) - ou[rows - 1]) * oldScale;
+            double sustainedGrowth = promotionTime > 0 ? totalOldGrowth / promotionTime : 0;
+            addChart("timeToFullGC", "Projected time to full GC (s)", timeToFullGC);
+            addSummary("Projected time to full GC (worst: shortest)", "s", sustainedGrowth > 0 ? Math.max(lastFree, 0) / sustainedGrowth : Double.NaN,
+                    min(timeToFullGC));
+        }
+
+        // Survivor spaces: usage vs desired survivor size, and tenuring threshold
+        double[] s0u = column(table, "S0U");
+        double[] s1u = column(table, "S1U");
+        double[] dss = column(table, "DSS");
+        double[] tt = column(table, "TT");
+        double[] mtt = column(table, "MTT");
+        if (s0u != null && s1u != null) {
+            double[] survivor = new double[rows];
+            for (int n = 0; n < rows; n++) {
+                survivor[n] = (s0u[n] + s1u[n]) / 1024.0;
+            }
+            DefaultXYDataset dataset = new DefaultXYDataset();
+            if (dss != null) {
+                double[] desired = new double[rows];
+                for (int n = 0; n < rows; n++) {
+                    desired[n] = dss[n] / 1024.0;
+                }
+                dataset.addSeries("desired survivor size", new double[][] { referenceData, desired });
+            }
+            dataset.addSeries("survivor average", new double[][] { referenceData, Report.runningAverage(survivor) });
+            dataset.addSeries("survivor", new double[][] { referenceData, survivor });
+            addChart("survivor", "Survivor space usage vs desired survivor size (MB)", dataset, survivor);
+            addSummary("Survivor usage", "MB", mean(survivor), max(survivor));
+        }
+        if (tt != null && mtt != null) {
+            DefaultXYDataset dataset = new DefaultXYDataset();
+            dataset.addSeries("maximum tenuring threshold", new double[][] { referenceData, mtt });
+            dataset.addSeries("tenuring threshold", new double[][] { referenceData, tt });
+            addChart("tenuring", "Tenuring threshold", dataset, tt);
+        }
+        if ((s0u != null && s1u != null && dss != null) || (tt != null && mtt != null)) {
+            // young GCs after which the survivors did not fit: more than the desired size, or the threshold was lowered
+            int overflows = 0;
+            for (int n = 1; n < rows; n++) {
+                if (!(ygc[n] > ygc[n - 1])) {
+                    continue;
+                }
+                boolean overflow = s0u != null && s1u != null && dss != null && s0u[n] + s1u[n] > dss[n];
+                overflow |= tt != null && mtt != null && tt[n] < mtt[n] && tt[n] < tt[n - 1];
+                if (overflow) {
+                    overflows++;
+                }
+            }
+            summary.add(new String[] { "Survivor overflows", "young GCs", String.valueOf(overflows), "" });
+        }
+
+        summary.add(new String[] { "Young GCs", "collections", String.valueOf((long) youngGCs), "" });
+        summary.add(new String[] { "Full GCs", "collections", String.valueOf((long) fullGCs), "" });
+    }
+
+    private void addChart(String name, String title, double[] data) {
+        DefaultXYDataset dataset = new DefaultXYDataset();
+        dataset.addSeries(name + " average", new double[][] { referenceData, Report.runningAverage(data) });
+        dataset.addSeries(name, new double[][] { referenceData, data });
+        addChart(name, title, dataset, data);
+    }
+
+    private void addChart(String name, String title, XYDataset dataset, double[] data) {
+        charts.put(name, dataset);
+        titles.put(name, title);
+        values.put(name, data);
+    }
+
+    private void addSummary(String metric, String unit, double sustained, double peak) {
+        summary.add(new String[] { metric, unit, format(sustained), format(peak) });
+    }
+
+    private String format(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "n/a" : formatter.format(value);
+    }
+
+    /**
+     * Rate of the amounts over the last WINDOW seconds (or since the beginning of the capture).
+     */
+    private static double[] windowRate(double[] time, double[] amounts) {
+        double[] rate = new double[time.length];
+        double sum = 0;
+        int start = 0;
+        rate[0] = Double.NaN;
+        for (int n = 1; n < time.length; n++) {
+            sum += amounts[n];
+            while (start < n - 1 && time[n] - time[start + 1] >= WINDOW) {
+                start++;
+                sum -= amounts[start];
+            }
+            double span = time[n] - time[start];
+            rate[n] = span > 0 ? sum / span : Double.NaN;
+        }
+        return rate;
+    }
+
+    private static double max(double[] data) {
+        double max = Double.NaN;
+        for (double d : data) {
+            if (!Double.isNaN(d) && (Double.isNaN(max) || d > max)) {
+                max = d;
+            }
+        }
+        return max;
+    }
+
+    private static double min(double[] data) {
+        double min = Double.NaN;
+        for (double d : data) {
+            if (!Double.isNaN(d) && (Double.isNaN(min) || d < min)) {
+                min = d;
+            }
+        }
+        return min;
+    }
+
+    private static double mean(double[] data) {
+        double sum = 0;
+        int count = 0;
+        for (double d : data) {
+            if (!Double.isNaN(d)) {
+                sum += d;
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    /**
+     * @return the charts of the analysis, by category name
+     */
+    public Map<String, XYDataset> getCharts() {
+        return charts;
+    }
+
+    public String getTitle(String category) {
+        return titles.get(category);
+    }
+
+    /**
+     * @return the main series of a chart, for the stats file
+     */
+    public double[] getValues(String category) {
+        return values.get(category);
+    }
+
+    public void writeSummaryPage(Document document) throws DocumentException {
+        TablePage.write(document, "JVM memory dynamics", summaryHeaders, summary);
+    }
+}
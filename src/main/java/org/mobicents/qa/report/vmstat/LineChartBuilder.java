@@ -0,0 +1,107 @@
+package org.mobicents.qa.report.vmstat;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.Range;
+import org.jfree.data.general.DatasetUtilities;
+import org.jfree.data.xy.DefaultXYDataset;
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * Builds the xy line chart used for each category of the report.
+ */
+public class LineChartBuilder implements ChartBuilder {
+
+    private String title;
+    private String xLabel;
+    private String yLabel;
+    private XYDataset dataset;
+
+    private Range domainBounds;
+    private Range rangeBounds;
+
+    public LineChartBuilder(String title, String xLabel, String yLabel, XYDataset dataset) {
+        this.title = title;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+        this.dataset = dataset;
+    }
+
+    public Range getDomainBounds() {
+        if (domainBounds == null) {
+            domainBounds = DatasetUtilities.findDomainBounds(dataset);
+        }
+        return domainBounds;
+    }
+
+    public JFreeChart createChart() {
+        return ChartFactory.createXYLineChart(title, xLabel, yLabel, dataset, PlotOrientation.VERTICAL, false, false, false);
+    }
+
+    public JFreeChart createChart(double fromX, double toX) {
+        if (rangeBounds == null) {
+            rangeBounds = padRange(DatasetUtilities.findRangeBounds(dataset));
+        }
+        JFreeChart chart = ChartFactory.createXYLineChart(title, xLabel, yLabel, slice(dataset, fromX, toX), PlotOrientation.VERTICAL, false, false,
+                false);
+        fixAxes(chart.getXYPlot(), fromX, toX, rangeBounds);
+        return chart;
+    }
+
+    static void fixAxes(XYPlot plot, double fromX, double toX, Range rangeBounds) {
+        plot.getDomainAxis().setRange(fromX, toX);
+        if (rangeBounds != null) {
+            plot.getRangeAxis().setRange(rangeBounds);
+        }
+    }
+
+    /**
+     * Adds a small margin to the y range, like the auto range does, so lines on the bounds stay visible.
+     */
+    static Range padRange(Range range) {
+        if (range == null) {
+            return null;
+        }
+        double margin = range.getLength() > 0 ? range.getLength() * 0.05 : Math.max(Math.abs(range.getUpperBound()) * 0.05, 1);
+        return new Range(range.getLowerBound() - margin, range.getUpperBound() + margin);
+    }
+
+    /**
+     * Copies the items of each series with x between fromX and toX (plus the neighbouring items, so lines reach the border of the tile). Series
+     * x values must be in ascending order.
+     */
+    static XYDataset slice(XYDataset dataset, double fromX, double toX) {
+        DefaultXYDataset slice = new DefaultXYDataset();
+        for (int s = 0; s < dataset.getSeriesCount(); s++) {
+            int count = dataset.getItemCount(s);
+            int first = Math.max(lowerIndex(dataset, s, count, fromX) - 1, 0);
+            int last = Math.min(lowerIndex(dataset, s, count, toX) + 1, count);
+
+            int length = Math.max(last - first, 0);
+            double[][] data = new double[2][length];
+            for (int i = 0; i < length; i++) {
+                data[0][i] = dataset.getXValue(s, first + i);
+                data[1][i] = dataset.getYValue(s, first + i);
+            }
+            slice.addSeries(dataset.getSeriesKey(s), data);
+        }
+        return slice;
+    }
+
+    // index of the first item with x >= value
+    private static int lowerIndex(XYDataset dataset, int series, int count, double value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dataset.getXValue(series, mid) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
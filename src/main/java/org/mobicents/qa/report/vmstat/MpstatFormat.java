@@ -0,0 +1,24 @@
+package org.mobicents.qa.report.vmstat;
+
+/**
+ * Output of 'mpstat -P ALL'. Values of each cpu go to columns like "cpu3.%usr", "cpu.%usr" for all the cpus.
+ */
+public class MpstatFormat extends SysstatFormat {
+
+    public String getName() {
+        return "mpstat";
+    }
+
+    protected boolean acceptsHeader(String[] header) {
+        // sar -P ALL looks the same but has %user, or %steal before %irq
+        for (String token : header) {
+            if (token.equals("%irq")) {
+                return contains(header, "CPU") && contains(header, "%usr");
+            }
+            if (token.equals("%steal")) {
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,594 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.jfree.data.xy.DefaultXYDataset;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+
+/**
+ * Finds periodic behaviour and spikes in the categories of a report.
+ *
+ * <ul>
+ * <li>periods: each category is detrended (least squares line) and zero padded, and its periodogram is transformed back into the
+ * autocorrelation. The peaks of the autocorrelation give the dominant periods, and their height the strength: the correlation of the category
+ * with itself one period later. Unlike the peaks of the periodogram, this also finds short spikes that repeat (like a cron job), whose power
+ * is spread over many harmonics. Only periods that repeat at least twice in the capture are reported.</li>
+ * <li>spikes: a sample is a spike when it is more than {@value #SPIKE_SIGMAS} standard deviations above the mean of the previous
+ * {@value #WINDOW} seconds (longer if needed to hold {@value #MIN_BASELINE} samples, for long sampling intervals). Spikes do not count in
+ * the baseline of the next samples. Consecutive spikes, and spikes of different categories that overlap, make an episode.</li>
+ * </ul>
+ * Samples are assumed to be taken at a regular interval. Each category is analysed in its own task, with one forward and one
+ * inverse FFT.
+ */
+public class PeriodicityAnalysis {
+
+    private static Logger logger = Logger.getLogger(PeriodicityAnalysis.class.getName());
+
+    public static final double WINDOW = 60;
+
+    public static final double SPIKE_SIGMAS = 3;
+
+    // samples needed in the baseline before looking for spikes
+    public static final int MIN_BASELINE = 10;
+
+    private static final int TOP_PERIODS = 3;
+
+    private static final double MIN_STRENGTH = 0.3;
+
+    // plots of an episode page, so its size does not depend on the number of categories
+    public static final int MAX_EPISODE_PLOTS = 8;
+
+    private static final String[] periodHeaders = new String[] { "Category", "Period 1 (s)", "Strength", "Period 2 (s)", "Strength", "Period 3 (s)",
+            "Strength" };
+
+    private static final String[] episodeHeaders = new String[] { "Episode", "From (s)", "To (s)", "Peak", "Sigmas", "Categories" };
+
+    public static class Period {
+        private double seconds;
+        private double strength;
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public double getStrength() {
+            return strength;
+        }
+    }
+
+    public static class Episode {
+        private double start;
+        private double end;
+        private double peakTime;
+        private String peakCategory;
+        private double score;
+        private Set<String> categories = new LinkedHashSet<String>();
+
+        public double getStart() {
+            return start;
+        }
+
+        public double getEnd() {
+            return end;
+        }
+
+        public double getPeakTime() {
+            return peakTime;
+        }
+
+        public String getPeakCategory() {
+            return peakCategory;
+        }
+
+        /**
+         * @return standard deviations above the baseline at the peak
+         */
+        public double getScore() {
+            return score;
+        }
+
+        public Set<String> getCategories() {
+            return categories;
+        }
+    }
+
+    private static class Result {
+        List<Period> periods;
+        List<Episode> episodes;
+        double sigma;
+        ReportProfiler profiler;
+    }
+
+    private double[] time;
+    private Map<String, double[]> values;
+
+    private Map<String, List<Period>> periods = new LinkedHashMap<String, List<Period>>();
+    private List<Episode> episodes = new ArrayList<Episode>();
+    private Map<String, Double> sigmas = new HashMap<String, Double>();
+    private List<ReportProfiler> taskProfilers = new ArrayList<ReportProfiler>();
+
+    private NumberFormat formatter = new DecimalFormat("#,##0.0", new DecimalFormatSymbols(Locale.US));
+
+    /**
+     * @param time
+     *            seconds of each sample
+     * @param values
+     *            values of each category
+     * @param maxEpisodes
+     *            number of episodes kept, the ones with the biggest spikes
+     * @param threads
+     *            number of categories analysed at the same time
+     */
+    public PeriodicityAnalysis(double[] time, Map<String, double[]> values, int maxEpisodes, int threads) throws InterruptedException {
+        this.time = time;
+        this.values = values;
+
+        Map<String, Future<Result>> futures = new LinkedHashMap<String, Future<Result>>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, values.size())));
+        try {
+            for (final Map.Entry<String, double[]> entry : values.entrySet()) {
+                futures.put(entry.getKey(), executor.submit(new Callable<Result>() {
+                    public Result call() {
+                        return analyse(entry.getKey(), entry.getValue());
+                    }
+                }));
+            }
+
+            List<Episode> all = new ArrayList<Episode>();
+            for (Map.Entry<String, Future<Result>> entry : futures.entrySet()) {
+                try {
+                    Result result = entry.getValue().get();
+                    if (!result.periods.isEmpty()) {
+                        periods.put(entry.getKey(), result.periods);
+                    }
+                    all.addAll(result.episodes);
+                    sigmas.put(entry.getKey(), Double.valueOf(result.sigma));
+                    taskProfilers.add(result.profiler);
+                } catch (ExecutionException e) {
+                    logger.warn("Could not analyse category " + entry.getKey(), e.getCause());
+                }
+            }
+            episodes = selectEpisodes(mergeEpisodes(all), maxEpisodes);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result analyse(String category, double[] data) {
+        Result result = new Result();
+        // created in the task, so it measures the thread of the pool
+        result.profiler = new ReportProfiler();
+        result.profiler.start("periodicity");
+        result.periods = findPeriods(data);
+        result.episodes = findEpisodes(category, data);
+        result.sigma = standardDeviation(data);
+        result.profiler.stop("periodicity", 1, "categories");
+        return result;
+    }
+
+    private static double standardDeviation(double[] data) {
+        double sum = 0, sumSquares = 0;
+        int count = 0;
+        for (double d : data) {
+            if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                sum += d;
+                sumSquares += d * d;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double mean = sum / count;
+        return Math.sqrt(Math.max(sumSquares / count - mean * mean, 0));
+    }
+
+    private double getInterval() {
+        return time.length > 1 ? (time[time.length - 1] - time[0]) / (time.length - 1) : 1;
+    }
+
+    /**
+     * @return seconds of the spike baseline
+     */
+    public double getWindow() {
+        return Math.max(WINDOW, (MIN_BASELINE + 0.5) * getInterval());
+    }
+
+    private List<Period> findPeriods(double[] data) {
+        List<Period> result = new ArrayList<Period>();
+        int n = data.length;
+
+        // least squares line of the valid values
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!Double.isNaN(data[i]) && !Double.isInfinite(data[i])) {
+                sumX += i;
+                sumY += data[i];
+                sumXX += (double) i * i;
+                sumXY += i * data[i];
+                count++;
+            }
+        }
+        if (count < 2 * MIN_BASELINE) {
+            return result;
+        }
+        double denominator = count * sumXX - sumX * sumX;
+        double slope = denominator != 0 ? (count * sumXY - sumX * sumY) / denominator : 0;
+        double intercept = (sumY - slope * sumX) / count;
+
+        // padded to twice the length, so the autocorrelation does not wrap around
+        int size = Integer.highestOneBit(2 * n);
+        if (size < 2 * n) {
+            size <<= 1;
+        }
+        double[] re = new double[size];
+        double[] im = new double[size];
+        for (int i = 0; i < n; i++) {
+            // missing values are replaced by the trend
+            re[i] = Double.isNaN(data[i]) || Double.isInfinite(data[i]) ? 0 : data[i] - (intercept + slope * i);
+        }
+        fft(re, im);
+
+        // the autocorrelation is the inverse transform of the periodogram
+        for (int k = 0; k < size; k++) {
+            re[k] = re[k] * re[k] + im[k] * im[k];
+            im[k] = 0;
+        }
+        fft(re, im);
+        if (re[0] <= 0) {
+            return result;
+        }
+        int maxLag = n / 2;
+        double[] acf = new double[maxLag + 2];
+        for (int lag = 0; lag < acf.length; lag++) {
+            acf[lag] = re[lag] / re[0] * n / (n - lag);
+        }
+
+        // peaks after the first zero crossing, skipping the multiples of the periods already found
+        int lag = 1;
+        while (lag <= maxLag && acf[lag] > 0) {
+            lag++;
+        }
+        List<Period> found = new ArrayList<Period>();
+        List<Double> lags = new ArrayList<Double>();
+        double interval = getInterval();
+        for (; lag <= maxLag; lag++) {
+            if (acf[lag] < MIN_STRENGTH || acf[lag] < acf[lag - 1] || acf[lag] <= acf[lag + 1]) {
+                continue;
+            }
+            double curvature = acf[lag - 1] - 2 * acf[lag] + acf[lag + 1];
+            double peak = lag + (curvature != 0 ? 0.5 * (acf[lag - 1] - acf[lag + 1]) / curvature : 0);
+            boolean multiple = false;
+            for (Double previous : lags) {
+                double ratio = peak / previous.doubleValue();
+                if (Math.abs(ratio - Math.round(ratio)) < 0.1) {
+                    multiple = true;
+                    break;
+                }
+            }
+            if (multiple) {
+                continue;
+            }
+            lags.add(Double.valueOf(peak));
+            Period period = new Period();
+            period.seconds = peak * interval;
+            period.strength = Math.min(acf[lag], 1);
+            found.add(period);
+        }
+
+        Collections.sort(found, new Comparator<Period>() {
+            public int compare(Period a, Period b) {
+                return Double.compare(b.strength, a.strength);
+            }
+        });
+        for (int i = 0; i < found.size() && i < TOP_PERIODS; i++) {
+            result.add(found.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * In place radix-2 FFT, the length of the arrays must be a power of two.
+     */
+    static void fft(double[] re, double[] im) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            double angle = -2 * Math.PI / length;
+            double wRe = Math.cos(angle);
+            double wIm = Math.sin(angle);
+            for (int i = 0; i < n; i += length) {
+                double uRe = 1;
+                double uIm = 0;
+                for (int j = 0; j < length / 2; j++) {
+                    int a = i + j;
+                    int b = a + length / 2;
+                    double vRe = re[b] * uRe - im[b] * uIm;
+                    double vIm = re[b] * uIm + im[b] * uRe;
+                    re[b] = re[a] - vRe;
+                    im[b] = im[a] - vIm;
+                    re[a] += vRe;
+                    im[a] += vIm;
+                    double t = uRe * wRe - uIm * wIm;
+                    uIm = uRe * wIm + uIm * wRe;
+                    uRe = t;
+                }
+            }
+        }
+    }
+
+    private List<Episode> findEpisodes(String category, double[] data) {
+        List<Episode> result = new ArrayList<Episode>();
+        int n = data.length;
+        boolean[] baseline = new boolean[n];
+        double sum = 0, sumSquares = 0;
+        int count = 0;
+        int start = 0;
+        double gap = 2 * getInterval();
+        double window = getWindow();
+
+        Episode episode = null;
+        for (int i = 0; i < n; i++) {
+            // drop the samples that left the window
+            while (start < i && time[i] - time[start] > window) {
+                if (baseline[start]) {
+                    sum -= data[start];
+                    sumSquares -= data[start] * data[start];
+                    count--;
+                }
+                start++;
+            }
+            double value = data[i];
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+
+            boolean spike = false;
+            if (count >= MIN_BASELINE) {
+                double mean = sum / count;
+                double sigma = Math.sqrt(Math.max(sumSquares / count - mean * mean, 0));
+                if (sigma > 0 && value > mean + SPIKE_SIGMAS * sigma) {
+                    spike = true;
+                    double score = (value - mean) / sigma;
+                    if (episode == null || time[i] - episode.end > gap) {
+                        episode = new Episode();
+                        episode.start = time[i];
+                        episode.peakCategory = category;
+                        episode.categories.add(category);
+                        result.add(episode);
+                    }
+                    episode.end = time[i];
+                    if (score > episode.score) {
+                        episode.score = score;
+                        episode.peakTime = time[i];
+                    }
+                }
+            }
+            if (!spike) {
+                baseline[i] = true;
+                sum += value;
+                sumSquares += value * value;
+                count++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Joins the episodes of different categories that overlap in time.
+     */
+    private List<Episode> mergeEpisodes(List<Episode> all) {
+        Collections.sort(all, new Comparator<Episode>() {
+            public int compare(Episode a, Episode b) {
+                return Double.compare(a.start, b.start);
+            }
+        });
+        double gap = 2 * getInterval();
+        List<Episode> merged = new ArrayList<Episode>();
+        Episode current = null;
+        for (Episode episode : all) {
+            if (current == null || episode.start - current.end > gap) {
+                current = episode;
+                merged.add(current);
+                continue;
+            }
+            current.end = Math.max(current.end, episode.end);
+            current.categories.addAll(episode.categories);
+            if (episode.score > current.score) {
+                current.score = episode.score;
+                current.peakTime = episode.peakTime;
+                current.peakCategory = episode.peakCategory;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return the episodes with the biggest spikes, in time order
+     */
+    private static List<Episode> selectEpisodes(List<Episode> all, int maxEpisodes) {
+        List<Episode> selected = new ArrayList<Episode>(all);
+        Collections.sort(selected, new Comparator<Episode>() {
+            public int compare(Episode a, Episode b) {
+                return Double.compare(b.score, a.score);
+            }
+        });
+        if (selected.size() > maxEpisodes) {
+            selected = new ArrayList<Episode>(selected.subList(0, maxEpisodes));
+        }
+        Collections.sort(selected, new Comparator<Episode>() {
+            public int compare(Episode a, Episode b) {
+                return Double.compare(a.start, b.start);
+            }
+        });
+        return selected;
+    }
+
+    public Map<String, List<Period>> getPeriods() {
+        return periods;
+    }
+
+    public List<Episode> getEpisodes() {
+        return episodes;
+    }
+
+    /**
+     * @return the profilers of the tasks, with a "periodicity" phase each
+     */
+    public List<ReportProfiler> getTaskProfilers() {
+        return taskProfilers;
+    }
+
+    /**
+     * Stacks the categories around the episode, with half the baseline window (or the length of the episode) on each side. At most
+     * {@value #MAX_EPISODE_PLOTS} categories are shown: the ones of the episode (peak first), then the ones that move the most in the window
+     * compared to their standard deviation.
+     */
+    public StackedChartBuilder createEpisodeChart(int number, Episode episode) {
+        double margin = Math.max(getWindow() / 2, episode.end - episode.start);
+        double from = episode.start - margin;
+        double to = episode.end + margin;
+
+        int first = 0;
+        while (first < time.length && time[first] < from) {
+            first++;
+        }
+        int last = first;
+        while (last < time.length && time[last] <= to) {
+            last++;
+        }
+
+        List<String> shown = new ArrayList<String>();
+        shown.add(episode.peakCategory);
+        for (String category : episode.categories) {
+            if (shown.size() < MAX_EPISODE_PLOTS && !shown.contains(category)) {
+                shown.add(category);
+            }
+        }
+        if (shown.size() < MAX_EPISODE_PLOTS) {
+            final Map<String, Double> movement = new HashMap<String, Double>();
+            for (Map.Entry<String, double[]> entry : values.entrySet()) {
+                if (!shown.contains(entry.getKey())) {
+                    movement.put(entry.getKey(), Double.valueOf(movement(entry.getKey(), entry.getValue(), first, last)));
+                }
+            }
+            List<String> others = new ArrayList<String>(movement.keySet());
+            Collections.sort(others, new Comparator<String>() {
+                public int compare(String a, String b) {
+                    return Double.compare(movement.get(b).doubleValue(), movement.get(a).doubleValue());
+                }
+            });
+            for (int i = 0; i < others.size() && shown.size() < MAX_EPISODE_PLOTS; i++) {
+                shown.add(others.get(i));
+            }
+        }
+
+        String title = "Spike episode " + number + ": " + formatter.format(episode.start) + " s - " + formatter.format(episode.end) + " s, peak of "
+                + episode.peakCategory + " at " + formatter.format(episode.peakTime) + " s";
+        if (shown.size() < values.size()) {
+            title += " (" + shown.size() + " of " + values.size() + " categories)";
+        }
+        StackedChartBuilder builder = new StackedChartBuilder(title, "seconds", false);
+        double[] x = new double[last - first];
+        System.arraycopy(time, first, x, 0, x.length);
+        for (String category : shown) {
+            double[] y = new double[x.length];
+            System.arraycopy(values.get(category), first, y, 0, y.length);
+            DefaultXYDataset dataset = new DefaultXYDataset();
+            dataset.addSeries(category, new double[][] { x, y });
+            builder.add(category, dataset);
+        }
+        return builder;
+    }
+
+    /**
+     * @return range of the values in [first, last) in standard deviations of the category, 0 if it does not move
+     */
+    private double movement(String category, double[] data, int first, int last) {
+        Double sigma = sigmas.get(category);
+        if (sigma == null || sigma.doubleValue() <= 0) {
+            return 0;
+        }
+        double min = Double.NaN;
+        double max = Double.NaN;
+        for (int i = first; i < last; i++) {
+            if (!Double.isNaN(data[i]) && !Double.isInfinite(data[i])) {
+                min = Double.isNaN(min) ? data[i] : Math.min(min, data[i]);
+                max = Double.isNaN(max) ? data[i] : Math.max(max, data[i]);
+            }
+        }
+        return Double.isNaN(min) ? 0 : (max - min) / sigma.doubleValue();
+    }
+
+    /**
+     * Adds a page with the dominant periods of each category and a page with the spike episodes.
+     */
+    public void writeSummaryPages(Document document) throws DocumentException {
+        List<String> categories = new ArrayList<String>(periods.keySet());
+        Collections.sort(categories, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return Double.compare(periods.get(b).get(0).strength, periods.get(a).get(0).strength);
+            }
+        });
+        List<String[]> rows = new ArrayList<String[]>();
+        for (String category : categories) {
+            String[] row = new String[periodHeaders.length];
+            row[0] = category;
+            List<Period> list = periods.get(category);
+            for (int i = 0; i < list.size(); i++) {
+                row[1 + 2 * i] = formatter.format(list.get(i).seconds);
+                row[2 + 2 * i] = formatter.format(list.get(i).strength * 100) + " %";
+            }
+            rows.add(row);
+        }
+        TablePage.write(document, "Dominant periods (autocorrelation above " + (int) (MIN_STRENGTH * 100) + " %)", periodHeaders, rows);
+
+        rows = new ArrayList<String[]>();
+        for (int i = 0; i < episodes.size(); i++) {
+            Episode episode = episodes.get(i);
+            StringBuilder sb = new StringBuilder();
+            for (String category : episode.categories) {
+                sb.append(sb.length() > 0 ? ", " : "").append(category);
+            }
+            rows.add(new String[] { String.valueOf(i + 1), formatter.format(episode.start), formatter.format(episode.end), episode.peakCategory,
+                    formatter.format(episode.score), sb.toString() });
+        }
+        TablePage.write(document, "Spike episodes (above " + (int) SPIKE_SIGMAS + " sigmas of the last " + (int) getWindow() + " s)", episodeHeaders,
+                rows);
+    }
+}
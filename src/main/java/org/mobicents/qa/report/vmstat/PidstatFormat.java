@@ -0,0 +1,15 @@
+package org.mobicents.qa.report.vmstat;
+
+/**
+ * Output of 'pidstat -urdh' (or without -h, with a section for each report). Values of each process go to columns like "pid1234.%CPU".
+ */
+public class PidstatFormat extends SysstatFormat {
+
+    public String getName() {
+        return "pidstat";
+    }
+
+    protected boolean acceptsHeader(String[] header) {
+        return contains(header, "Command") && (contains(header, "PID") || contains(header, "TGID"));
+    }
+}
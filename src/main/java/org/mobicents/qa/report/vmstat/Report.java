@@ -1,10 +1,8 @@
 package org.mobicents.qa.report.vmstat;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -13,7 +11,12 @@ import java.net.URLDecoder;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -25,18 +28,11 @@ import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
-import org.jfree.chart.ChartFactory;
-import org.jfree.chart.JFreeChart;
-import org.jfree.chart.encoders.ImageEncoder;
-import org.jfree.chart.encoders.KeypointPNGEncoderAdapter;
-import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.xy.DefaultXYDataset;
 import org.jfree.data.xy.XYDataset;
 
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.Image;
-import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.PdfWriter;
 
 public class Report {
@@ -50,6 +46,7 @@ public class Report {
     private static Set<String> selectedCategories = new HashSet<String>();
     private static Set<String> capacityCategories = new HashSet<String>();
     private static Set<String> counterCategories = new HashSet<String>();
+    private static Set<String> selectedSysstatCategories = new HashSet<String>();
 
     private static Map<String, String> categoriesTranslator = new HashMap<String, String>();
 
@@ -58,6 +55,10 @@ public class Report {
         String[] selected_jstat = new String[] { "Timestamp", "S0", "S1", "E", "O", "P", "EC", "OC", "PC", "EU", "OU", "PU", "YGC", "YGCT", "FGC", "FGCT",
                 "GCT", "YGC#d/dt", "YGCT#d/dt", "FGC#d/dt", "FGCT#d/dt", "GCT#d/dt" };
 
+        String[] selected_sysstat = new String[] { "%usr", "%user", "%sys", "%system", "%iowait", "%steal", "%soft", "%idle", "r/s", "w/s",
+                "rkB/s", "wkB/s", "await", "r_await", "w_await", "aqu-sz", "avgqu-sz", "%util", "%CPU", "minflt/s", "majflt/s", "RSS", "kB_rd/s",
+                "kB_wr/s", "iodelay", "cswch/s", "nvcswch/s", "rxkB/s", "txkB/s", "runq-sz", "ldavg-1" };
+
         String[] jstat_capacity = new String[] { "S0C", "S1C", "EC", "OC", "PC" };
         String[] jstat_counter = new String[] { "YGC", "YGCT", "FGC", "FGCT", "GCT" };
 
@@ -73,6 +74,9 @@ public class Report {
         for (String category : jstat_counter) {
             counterCategories.add(category);
         }
+        for (String category : selected_sysstat) {
+            selectedSysstatCategories.add(category);
+        }
 
         categoriesTranslator.put("r", "Processes waiting for runtime");
         categoriesTranslator.put("b", "Processes in uninterruptible sleep");
@@ -153,6 +157,41 @@ public class Report {
         categoriesTranslator.put("FGCT#d/dt", "Full garbage collection time per second");
         categoriesTranslator.put("GCT#d/dt", "Total garbage collection time per second");
 
+        categoriesTranslator.put("%usr", "User time (%)");
+        categoriesTranslator.put("%user", "User time (%)");
+        categoriesTranslator.put("%nice", "User time with nice priority (%)");
+        categoriesTranslator.put("%sys", "System time (%)");
+        categoriesTranslator.put("%system", "System time (%)");
+        categoriesTranslator.put("%iowait", "Waiting for IO time (%)");
+        categoriesTranslator.put("%irq", "Hardware interrupts time (%)");
+        categoriesTranslator.put("%soft", "Software interrupts time (%)");
+        categoriesTranslator.put("%steal", "Time stolen from a virtual machine (%)");
+        categoriesTranslator.put("%guest", "Time running a virtual processor (%)");
+        categoriesTranslator.put("%idle", "Idle time (%)");
+        categoriesTranslator.put("r/s", "Read requests (/s)");
+        categoriesTranslator.put("w/s", "Write requests (/s)");
+        categoriesTranslator.put("rkB/s", "Kbytes read (/s)");
+        categoriesTranslator.put("wkB/s", "Kbytes written (/s)");
+        categoriesTranslator.put("await", "Average time of IO requests (ms)");
+        categoriesTranslator.put("r_await", "Average time of read requests (ms)");
+        categoriesTranslator.put("w_await", "Average time of write requests (ms)");
+        categoriesTranslator.put("aqu-sz", "Average queue length of IO requests");
+        categoriesTranslator.put("avgqu-sz", "Average queue length of IO requests");
+        categoriesTranslator.put("%util", "Device utilization (%)");
+        categoriesTranslator.put("%CPU", "Total CPU time of the task (%)");
+        categoriesTranslator.put("minflt/s", "Minor faults (/s)");
+        categoriesTranslator.put("majflt/s", "Major faults (/s)");
+        categoriesTranslator.put("RSS", "Resident set size (KB)");
+        categoriesTranslator.put("kB_rd/s", "Kbytes read by the task (/s)");
+        categoriesTranslator.put("kB_wr/s", "Kbytes written by the task (/s)");
+        categoriesTranslator.put("iodelay", "Block IO delay of the task (clock ticks)");
+        categoriesTranslator.put("cswch/s", "Voluntary context switches (/s)");
+        categoriesTranslator.put("nvcswch/s", "Non voluntary context switches (/s)");
+        categoriesTranslator.put("rxkB/s", "Kbytes received (/s)");
+        categoriesTranslator.put("txkB/s", "Kbytes transmitted (/s)");
+        categoriesTranslator.put("runq-sz", "Run queue length");
+        categoriesTranslator.put("ldavg-1", "Load average for the last minute");
+
         categoriesTranslator.put("Size", "Number of bytes of bytecode for the method");
         categoriesTranslator.put("Type", "Compilation type");
         categoriesTranslator.put("Method", "Method name is the method within the given class");
@@ -170,32 +209,72 @@ public class Report {
 
     private static boolean statsFile = false;
 
+    private static boolean profileFile = false;
+
+    private static boolean profilePage = false;
+
+    private static boolean combinedReport = false;
+
+    private static boolean heatmaps = false;
+
+    private static double heatmapBucket = 60;
+
+    private static boolean heatmapLogScale = false;
+
+    private static boolean gcAnalysis = false;
+
+    private static int watchWorkers = 0;
+
+    private static int spikeEpisodes = 0;
+
+    private static List<String> combinedCategories = new ArrayList<String>(Arrays.asList(new String[] { "us", "sy", "cs", "r", "cpu.%usr",
+            "cpu.%iowait", "OU", "EU", "YGC#d/dt", "FGC#d/dt" }));
+
     private static String defaultOutputFileName = "vmstat-report.pdf";
 
+    // wall clock time of the first sample of the files given as file@yyyy-MM-ddTHH:mm:ss
+    private static Map<String, Long> captureStarts = new HashMap<String, Long>();
+
+    private static final String CAPTURE_START_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+
+    private static final int BIG_CHART_TILE_SIZE = 1600;
+
     private static void printInfo() {
         logger.info("Usage: java -jar 'thisFile' [options] [file1 ... fileN]");
         logger.info("Usage: If no files are specified, all .csv files in current directory are used");
+        logger.info("Usage: Files can be the output of vmstat, jstat, mpstat, iostat, pidstat or sar");
+        logger.info("Usage: For -c, file@2026-10-19T12:00:00 gives the local time of the first sample of a file without timestamps");
         logger.info("Option: -Tn- TIME n - Set the period according to vmstat delay");
         logger.info("Option: -a - ALL    - Generates charts for all the categories");
-        logger.info("Option: -b - BIG    - Generates charts with 1 pixel for each elapsed second");
+        logger.info("Option: -b - BIG    - Generates charts with 1 pixel for each elapsed second (split in pages of " + BIG_CHART_TILE_SIZE + " seconds)");
         logger.info("Option: -d - DEBUG  - Extra information during program execution");
         logger.info("Option: -h - HELP   - Shows this info and exits");
         logger.info("Option: -p - PRINT  - Print chart images in a subfolder");
         logger.info("Option: -o - OUTPUT - Chooses the filename of the output (in single file mode only)");
         logger.info("Option: -s - STATS  - Writes a txt file with the statistical properties of the categories");
+        logger.info("Option: -m - METRICS - Writes a json file with the time, cpu and memory spent in each stage of the report");
+        logger.info("Option: -M - METRICS - Same as -m, and adds a report generation profile page to the report");
+        logger.info("Option: -Hn - HEATMAP - Adds a heatmap of the values of each category, with buckets of n seconds (default 60)");
+        logger.info("Option: -l - LOG    - Uses a log scale for the values of the heatmaps");
+        logger.info("Option: -g - GC     - Adds allocation, promotion and survivor analysis of jstat files (-gc, -gcnew or -gccause)");
+        logger.info("Option: -c - COMBINED - Aligns all the files (captures of the same host) on wall clock time in a single report");
+        logger.info("Option: -Cx,y - CATEGORIES - Categories of the combined report, e.g. -Csy,cs,FGC#d/dt,OU");
+        logger.info("Option: -fn - PERIODS - Adds the dominant periods of each category and the n biggest spike episodes (default 5)");
+        logger.info("Option: -wn - WATCH  - Keeps running and reports each .csv file dropped in the given directory, with n workers (default 1 per cpu)");
     }
 
     public static void main(String[] args) {
 
-        // Setup Log4j
+        // Setup Log4j (the level is set on the package, so the loggers of all the classes follow it)
         Logger.getRootLogger().addAppender(new ConsoleAppender(new PatternLayout("%c %-5p %m%n")));
-        logger.setLevel(Level.INFO);
+        Logger packageLogger = Logger.getLogger(Report.class.getPackage().getName());
+        packageLogger.setLevel(Level.INFO);
         logger.info("VMStat Report Tool starting ... ");
 
         // Search for -d flag
         for (String string : args) {
             if ("-d".equals(string)) {
-                logger.setLevel(Level.DEBUG);
+                packageLogger.setLevel(Level.DEBUG);
                 logger.debug("Debug level set");
                 break;
             }
@@ -223,6 +302,13 @@ public class Report {
                 continue;
             }
             if (string.charAt(0) != '-') {
+                int at = string.lastIndexOf('@');
+                Long start = at > 0 ? parseCaptureStart(string.substring(at + 1)) : null;
+                if (start != null) {
+                    string = string.substring(0, at);
+                    captureStarts.put(string, start);
+                    logger.debug("Capture start of " + string + " set: " + new Date(start.longValue()));
+                }
                 filenames.add(string);
                 logger.debug("File to open: " + string);
             } else {
@@ -251,6 +337,73 @@ public class Report {
                     logger.info("Writing stat file");
                     continue;
                 }
+                if ("-m".equals(string)) {
+                    profileFile = true;
+                    logger.info("Writing profile file");
+                    continue;
+                }
+                if ("-M".equals(string)) {
+                    profileFile = true;
+                    profilePage = true;
+                    logger.info("Writing profile file and page");
+                    continue;
+                }
+                if (string.startsWith("-H")) {
+                    heatmaps = true;
+                    if (string.length() > 2) {
+                        try {
+                            heatmapBucket = Double.parseDouble(string.substring(2));
+                        } catch (RuntimeException e) {
+                            logger.warn("Could not set heatmap bucket to: " + string.substring(2));
+                        }
+                    }
+                    logger.info("Heatmaps set with buckets of " + heatmapBucket + " seconds");
+                    continue;
+                }
+                if ("-l".equals(string)) {
+                    heatmapLogScale = true;
+                    logger.info("Heatmap log scale set");
+                    continue;
+                }
+                if ("-g".equals(string)) {
+                    gcAnalysis = true;
+                    logger.info("GC analysis set");
+                    continue;
+                }
+                if ("-c".equals(string)) {
+                    combinedReport = true;
+                    logger.info("Combined report set");
+                    continue;
+                }
+                if (string.startsWith("-f")) {
+                    spikeEpisodes = 5;
+                    if (string.length() > 2) {
+                        try {
+                            spikeEpisodes = Integer.parseInt(string.substring(2));
+                        } catch (RuntimeException e) {
+                            logger.warn("Could not set spike episodes to: " + string.substring(2));
+                        }
+                    }
+                    logger.info("Periodicity analysis set with " + spikeEpisodes + " spike episodes");
+                    continue;
+                }
+                if (string.startsWith("-w")) {
+                    watchWorkers = Runtime.getRuntime().availableProcessors();
+                    if (string.length() > 2) {
+                        try {
+                            watchWorkers = Integer.parseInt(string.substring(2));
+                        } catch (RuntimeException e) {
+                            logger.warn("Could not set watch workers to: " + string.substring(2));
+                        }
+                    }
+                    logger.info("Watch mode set with " + watchWorkers + " workers");
+                    continue;
+                }
+                if (string.startsWith("-C")) {
+                    combinedCategories = new ArrayList<String>(Arrays.asList(string.substring(2).split(",")));
+                    logger.info("Combined report categories set to " + combinedCategories);
+                    continue;
+                }
                 if ("-t".equals(string.substring(0, 2))) {
                     try {
                         period = Double.parseDouble(string.substring(2));
@@ -271,6 +424,11 @@ public class Report {
             return;
         }
 
+        if (watchWorkers > 0) {
+            watch(filenames);
+            return;
+        }
+
         if (filenames.isEmpty()) {
             try {
                 URL url = Report.class.getProtectionDomain().getCodeSource().getLocation();
@@ -304,50 +462,90 @@ public class Report {
             }
 
             // Create the report
-            for (String string : filenames) {
-                createReports(string);
+            if (combinedReport) {
+                List<String> sortedFilenames = new ArrayList<String>(filenames);
+                Collections.sort(sortedFilenames);
+                createCombinedReport(sortedFilenames);
+            } else {
+                for (String string : filenames) {
+                    createReports(string);
+                }
             }
             logger.info("Done. Oh yeah!");
         }
     }
 
-    public static void createReports(String filename) {
-        try {
-
-            // Create a CSV reader
-            OpenCsvReader csv = new OpenCsvReader(new FileReader(filename), ' ', '\"');
+    /**
+     * Runs until the process is stopped, reporting the files dropped in the given directory (or the directory of the jar).
+     */
+    private static void watch(Set<String> filenames) {
+        File directory;
+        if (filenames.size() > 1) {
+            printInfo();
+            return;
+        } else if (filenames.size() == 1) {
+            directory = new File(filenames.iterator().next()).getAbsoluteFile();
+        } else {
+            try {
+                URL url = Report.class.getProtectionDomain().getCodeSource().getLocation();
+                directory = new File(URLDecoder.decode(url.getFile(), "UTF-8")).getAbsoluteFile().getParentFile();
+            } catch (UnsupportedEncodingException e) { // should not happen
+                logger.warn("Could not get current dir");
+                return;
+            }
+        }
+        if (!directory.isDirectory()) {
+            logger.error(directory + " is not a directory");
+            return;
+        }
 
-            // Get categories
-            String[] categories;
-            String[] firstLine = csv.readNext();
+        // reports are written next to each file, and no window is ever shown
+        singleFile = false;
+        System.setProperty("java.awt.headless", "true");
 
-            if (firstLine[0].startsWith("procs")) {
-                // vmstat prints an extra header line that starts with "procs". Skip it.
-                categories = csv.readNext();
-            } else {
-                categories = firstLine;
+        final ReportDaemon daemon = new ReportDaemon(directory, watchWorkers);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                logger.info("Stopping, waiting for the reports in progress ...");
+                daemon.stop();
             }
+        });
+        daemon.start();
+    }
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("Categories read from CSV: " + Arrays.toString(categories));
-            }
+    /**
+     * @return true if the report was written
+     */
+    public static boolean createReports(String filename) {
+        ReportProfiler profiler = new ReportProfiler();
+        String reportFileName = singleFile ? defaultOutputFileName : filename.replaceAll(".csv", ".pdf");
+        try {
+            profiler.start("total");
+            profiler.start("read");
 
-            // Get values
-            List<String[]> values = csv.readAll();
-            int rows = values.size();
+            // Read the file into numeric columns
+            SampleTable table = InputFormats.read(filename, period);
+            String[] categories = table.getColumnNames();
+            int rows = table.getRowCount();
+            profiler.stop("read", rows, "rows");
 
-            csv.close();
-            csv = null;
+            logger.debug("File " + filename + " read as " + table.getFormatName() + " output");
+            if (logger.isDebugEnabled()) {
+                logger.debug("Categories read from file: " + Arrays.toString(categories));
+            }
+            if (rows == 0) {
+                logger.warn("No values in file: " + filename);
+                return false;
+            }
 
             // Reference categories
-            double[] referenceData = new double[rows];
-            for (int n = 0; n < rows; n++) {
-                referenceData[n] = period * n;
-            }
+            double[] referenceData = table.getTime();
+            boolean jstatFile = "jstat".equals(table.getFormatName());
 
             // convert to categories
             Map<String, XYDataset> categoryValues = new LinkedHashMap<String, XYDataset>();
             Map<String, FieldType> categoryTypes = new LinkedHashMap<String, FieldType>();
+            Map<String, double[]> analysisValues = new LinkedHashMap<String, double[]>();
 
             FileOutputStream statsFOS = null;
             if (statsFile) {
@@ -357,7 +555,7 @@ public class Report {
             }
 
             for (int i = 0; i < categories.length; i++) {
-                if (!selectedCategories.contains(categories[i]) && !allCharts) {
+                if (!isSelected(categories[i]) && !allCharts) {
                     logger.debug("Category " + categories[i] + " does not belong to selected categories. Dropping.");
                     continue;
                 }
@@ -368,104 +566,180 @@ public class Report {
                 }
 
                 // check for usable columns
-                try {
-                    Double.parseDouble(values.get(0)[i]);
+                if (table.isNumeric(i)) {
                     categoryTypes.put(categories[i], FieldType.DOUBLE);
-                    logger.debug("Category " + categories[i] + " is of Double type (" + values.get(0)[i] + ")");
-                } catch (NumberFormatException nfe) {
+                    logger.debug("Category " + categories[i] + " is of Double type");
+                } else {
                     categoryTypes.put(categories[i], FieldType.INVALID);
-                    logger.warn("Column " + categories[i] + " is not in numeric format (" + values.get(0)[i] + "): " + nfe.getMessage());
+                    logger.warn("Column " + categories[i] + " is not in numeric format (" + table.getInvalidSample(i) + ")");
                     continue;
                 }
 
-                // convert values
                 DefaultXYDataset dataset = new DefaultXYDataset();
 
-                double[] valueData = Report.getDoubleFromValues(values, rows, i);
+                double[] valueData = table.getValues(i);
                 if (statsFile) {
-                    String unit = categories[i].endsWith("C") ? "collections" : "unit";
-                    unit = categories[i].endsWith("U") ? "kbytes" : categories[i].endsWith("T") ? "sec" : unit;
+                    profiler.start("stats");
+                    String unit = "unit";
+                    if (jstatFile) {
+                        // jstat names: collection counts end with C, usages with U and times with T
+                        unit = categories[i].endsWith("C") ? "collections" : unit;
+                        unit = categories[i].endsWith("U") ? "kbytes" : categories[i].endsWith("T") ? "sec" : unit;
+                    }
                     writeStatsToFile(categories[i], unit, valueData, statsFOS);
+                    profiler.stop("stats", 1, "categories");
                 }
 
                 // Check if a capacity category exists
                 String correspondingCapacityCategory = categories[i].substring(0, categories[i].length() - 1) + "C";
                 if (capacityCategories.contains(correspondingCapacityCategory)) {
-                    for (int j = 0; j < categories.length; j++) {
-                        if (correspondingCapacityCategory.equals(categories[j])) {
-
-                            logger.debug("Category " + categories[i] + " has corresponding capacity catagory. Adding to graph.");
+                    int j = table.indexOf(correspondingCapacityCategory);
+                    if (j >= 0) {
+                        logger.debug("Category " + categories[i] + " has corresponding capacity catagory. Adding to graph.");
 
-                            dataset.addSeries(categories[i] + " capacity", new double[][] { referenceData, Report.getDoubleFromValues(values, rows, j) });
-                            break;
-                        }
+                        dataset.addSeries(categories[i] + " capacity", new double[][] { referenceData, table.getValues(j) });
                     }
                 }
 
                 dataset.addSeries(categories[i] + " average", new double[][] { referenceData, Report.runningAverage(valueData) });
                 dataset.addSeries(categories[i], new double[][] { referenceData, valueData });
                 categoryValues.put(categories[i], dataset);
+                analysisValues.put(categories[i], valueData);
 
                 if (counterCategories.contains(categories[i])) {
                     DefaultXYDataset diffDataset = new DefaultXYDataset();
                     double[] diffValueData = diffOperator(valueData);
 
                     if (statsFile) {
+                        profiler.start("stats");
                         writeStatsToFile(categories[i] + "#d/dt", categories[i].endsWith("T") ? "sec/sec" : "collections/sec", diffValueData, statsFOS);
+                        profiler.stop("stats", 1, "categories");
                     }
 
                     diffDataset.addSeries(categories[i] + " average", new double[][] { referenceData, Report.runningAverage(diffValueData) });
                     diffDataset.addSeries(categories[i], new double[][] { referenceData, diffValueData });
                     categoryValues.put(categories[i] + "#d/dt", diffDataset);
+                    analysisValues.put(categories[i] + "#d/dt", diffValueData);
+                }
+            }
+
+            JvmMemoryAnalysis jvmMemoryAnalysis = null;
+            if (gcAnalysis) {
+                if (JvmMemoryAnalysis.isApplicable(table)) {
+                    profiler.start("gc analysis");
+                    jvmMemoryAnalysis = new JvmMemoryAnalysis(table, referenceData);
+                    profiler.stop("gc analysis", rows, "rows");
+
+                    if (statsFile) {
+                        for (String category : jvmMemoryAnalysis.getCharts().keySet()) {
+                            writeStatsToFile(category, "unit", jvmMemoryAnalysis.getValues(category), statsFOS);
+                        }
+                    }
+                } else {
+                    logger.warn("GC analysis needs the YGC and EU (or E) columns of jstat. Skipping.");
                 }
             }
-            values = null;
+            table = null;
 
-            if (categoryValues.isEmpty()) {
+            PeriodicityAnalysis periodicityAnalysis = null;
+            if (spikeEpisodes > 0 && !analysisValues.isEmpty()) {
+                profiler.start("periodicity");
+                try {
+                    periodicityAnalysis = new PeriodicityAnalysis(referenceData, analysisValues, spikeEpisodes, getAnalysisThreads());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("Periodicity analysis interrupted. Skipping.");
+                }
+                profiler.stop("periodicity", analysisValues.size(), "categories");
+                if (periodicityAnalysis != null) {
+                    // the categories are analysed by a pool of threads
+                    profiler.addWorkers("periodicity", periodicityAnalysis.getTaskProfilers());
+                }
+            }
+
+            if (categoryValues.isEmpty() && jvmMemoryAnalysis == null) {
                 logger.warn("No categories to be written to file.");
-                return;
+                return false;
             }
 
             // print available columns
             if (logger.isDebugEnabled()) {
                 logger.debug("Writting categories: " + Arrays.toString(categoryValues.keySet().toArray()));
             }
-            logger.info("Writting report '" + (singleFile ? defaultOutputFileName : filename.replaceAll(".csv", ".pdf")) + "'  ...");
+            logger.info("Writting report '" + reportFileName + "'  ...");
 
             // Write files (1600 is the default value because it looks prettier in my display)
+            // Big charts use 1 pixel for each elapsed second, split in tiles of at most 1600 seconds
             int referenceSize = bigCharts ? new Double(referenceData[referenceData.length - 1]).intValue() : 1600;
-            int imageSizeX = referenceSize;
+            int imageSizeX = Math.max(Math.min(referenceSize, BIG_CHART_TILE_SIZE), 1);
             int imageSizeY = 800;
+            double tileSpan = bigCharts ? imageSizeX : 0;
+            String pngDirName = printCharts ? (singleFile ? "vmstat-charts" : filename.replaceAll(".csv", "-charts")) : null;
 
             Document document = new Document();
-            document.setPageSize(new Rectangle(imageSizeX, imageSizeY));
             document.setMargins(0, 0, 0, 0);
-            PdfWriter.getInstance(document, new FileOutputStream(singleFile ? defaultOutputFileName : filename.replaceAll(".csv", ".pdf")));
+            ChartWriter chartWriter = new ChartWriter(document, profiler, imageSizeX, imageSizeY, tileSpan, pngDirName);
+            PdfWriter.getInstance(document, new FileOutputStream(reportFileName));
             document.open();
 
             for (String category : categoryValues.keySet()) {
-                String title = categoriesTranslator.get(category);
+                String title = getTitle(category);
                 String xLabel = "seconds";
                 String yLabel = category;
 
-                JFreeChart chart = ChartFactory.createXYLineChart(title, xLabel, yLabel, categoryValues.get(category), PlotOrientation.VERTICAL, false, false,
-                        false);
-                BufferedImage image = chart.createBufferedImage(imageSizeX, imageSizeY);
-
-                document.add(Image.getInstance(image, null));
+                chartWriter.write(category + "Chart", new LineChartBuilder(title, xLabel, yLabel, categoryValues.get(category)));
                 logger.debug("Wrote category chart " + category);
 
-                if (printCharts) {
-                    String newDirName = singleFile ? "vmstat-charts" : filename.replaceAll(".csv", "-charts");
-                    ImageEncoder encoder = new KeypointPNGEncoderAdapter();
-                    new File(newDirName).mkdir();
-                    String chartFile = newDirName + File.separator + category + "Chart.png";
-                    encoder.encode(image, new FileOutputStream(chartFile));
-                    logger.debug("Wrote category chart to file " + category);
+                if (heatmaps) {
+                    profiler.start("heatmap");
+                    HeatmapGrid grid = createHeatmapGrid(categoryValues.get(category));
+                    profiler.stop("heatmap", grid.getSamples(), "values");
+
+                    chartWriter.write(category + "Heatmap", new HeatmapChartBuilder(title, xLabel, yLabel, grid));
+                    logger.debug("Wrote category heatmap " + category);
                 }
             }
 
+            if (jvmMemoryAnalysis != null) {
+                for (String category : jvmMemoryAnalysis.getCharts().keySet()) {
+                    LineChartBuilder builder = new LineChartBuilder(jvmMemoryAnalysis.getTitle(category), "seconds", category, jvmMemoryAnalysis
+                            .getCharts().get(category));
+                    chartWriter.write(category + "Chart", builder);
+                    logger.debug("Wrote gc analysis chart " + category);
+                }
+                jvmMemoryAnalysis.writeSummaryPage(document);
+            }
+
+            if (periodicityAnalysis != null) {
+                periodicityAnalysis.writeSummaryPages(document);
+
+                // 200 pixels of height for each plot, like the combined report (the plots of an episode are limited)
+                List<PeriodicityAnalysis.Episode> episodes = periodicityAnalysis.getEpisodes();
+                for (int n = 0; n < episodes.size(); n++) {
+                    StackedChartBuilder builder = periodicityAnalysis.createEpisodeChart(n + 1, episodes.get(n));
+                    chartWriter.setImageSize(imageSizeX, Math.max(imageSizeY, 200 * builder.getPlotCount()));
+                    chartWriter.write("episode" + (n + 1) + "Chart", builder);
+                    logger.debug("Wrote spike episode " + (n + 1));
+                }
+                chartWriter.setImageSize(imageSizeX, imageSizeY);
+            }
+
+            if (profilePage) {
+                // the page can only show what was measured before the document is closed
+                profiler.writePage(document);
+            }
+
+            profiler.start("pdf");
             document.close();
+            profiler.stop("pdf");
+            profiler.stop("total", rows, "rows");
+
+            if (profileFile) {
+                String profileFileName = getProfileFileName(reportFileName);
+                profiler.writeJson(profileFileName, filename, reportFileName);
+                logger.info("Wrote profile file '" + profileFileName + "'");
+            }
+            return true;
 
         } catch (FileNotFoundException e) {
             logger.error("Unable to open file: " + filename, e);
@@ -474,16 +748,240 @@ public class Report {
         } catch (DocumentException e) {
             logger.warn("DocumentException: " + e.getMessage(), e);
         }
+        return false;
     }
 
-    private static double[] getDoubleFromValues(List<String[]> values, int rows, int i) {
-        int n = 0;
-        double[] valueData = new double[rows];
+    /**
+     * Creates a single report with the selected categories of all the files, aligned on wall clock time and stacked in the same page.
+     */
+    public static void createCombinedReport(List<String> filenames) {
+        ReportProfiler profiler = new ReportProfiler();
+        String reportFileName = defaultOutputFileName;
+        try {
+            profiler.start("total");
+
+            TimelineMerger merger = new TimelineMerger(Math.round(period * 1000));
+            for (String filename : filenames) {
+                profiler.start("read");
+                SampleTable table = InputFormats.read(filename, period);
+                profiler.stop("read", table.getRowCount(), "rows");
+                if (table.getRowCount() == 0) {
+                    logger.warn("No values in file: " + filename);
+                    continue;
+                }
 
-        for (String[] value : values) {
-            valueData[n++] = Double.parseDouble(value[i]);
+                long[] wallClock = getWallClock(filename, table);
+                String source = new File(filename).getName();
+                for (String category : combinedCategories) {
+                    double[] values = getCombinedValues(table, category);
+                    if (values != null) {
+                        logger.debug("Adding category " + category + " of " + source + " to combined report");
+                        merger.addSeries(source + ": " + category, wallClock, values);
+                    }
+                }
+            }
+            if (merger.isEmpty()) {
+                logger.warn("No categories to be written to file.");
+                return;
+            }
+
+            profiler.start("merge");
+            SampleTable merged = merger.merge();
+            merger = null;
+            int rows = merged.getRowCount();
+            profiler.stop("merge", rows, "rows");
+
+            double[] referenceData = new double[rows];
+            for (int n = 0; n < rows; n++) {
+                referenceData[n] = merged.getWallClock()[n];
+            }
+            StackedChartBuilder builder = new StackedChartBuilder("Combined timeline", "time", true);
+            for (String category : merged.getColumnNames()) {
+                DefaultXYDataset dataset = new DefaultXYDataset();
+                dataset.addSeries(category, new double[][] { referenceData, merged.getValues(merged.indexOf(category)) });
+                builder.add(category, dataset);
+            }
+            logger.info("Writting report '" + reportFileName + "'  ...");
+
+            // Same width as the other reports, 200 pixels of height for each plot
+            int referenceSize = bigCharts ? (int) merged.getTime()[rows - 1] : 1600;
+            int imageSizeX = Math.max(Math.min(referenceSize, BIG_CHART_TILE_SIZE), 1);
+            int imageSizeY = Math.max(800, 200 * builder.getPlotCount());
+            double tileSpan = bigCharts ? imageSizeX * 1000.0 : 0;
+            String pngDirName = printCharts ? "vmstat-charts" : null;
+
+            Document document = new Document();
+            document.setMargins(0, 0, 0, 0);
+            ChartWriter chartWriter = new ChartWriter(document, profiler, imageSizeX, imageSizeY, tileSpan, pngDirName);
+            PdfWriter.getInstance(document, new FileOutputStream(reportFileName));
+            document.open();
+
+            chartWriter.write("combinedChart", builder);
+
+            if (profilePage) {
+                profiler.writePage(document);
+            }
+
+            profiler.start("pdf");
+            document.close();
+            profiler.stop("pdf");
+            profiler.stop("total", rows, "rows");
+
+            if (profileFile) {
+                String profileFileName = getProfileFileName(reportFileName);
+                profiler.writeJson(profileFileName, filenames.toString(), reportFileName);
+                logger.info("Wrote profile file '" + profileFileName + "'");
+            }
+
+        } catch (FileNotFoundException e) {
+            logger.error("Unable to open file: " + e.getMessage(), e);
+        } catch (IOException e) {
+            logger.warn("IOException in files: " + filenames, e);
+        } catch (DocumentException e) {
+            logger.warn("DocumentException: " + e.getMessage(), e);
         }
-        return valueData;
+    }
+
+    /**
+     * Threads of the periodicity analysis of one report. In watch mode the processors are shared between the workers, so the reports in
+     * progress do not run more analysis threads than there are processors (or one per worker).
+     */
+    static int getAnalysisThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, watchWorkers));
+    }
+
+    /**
+     * Name of the profile json written next to a report: "report.pdf" gives "report.profile.json", "report" gives "report.profile.json".
+     */
+    static String getProfileFileName(String reportFileName) {
+        return reportFileName.replaceAll("\\.pdf$", "") + ".profile.json";
+    }
+
+    /**
+     * Builds the heatmap grid of a category from its values (the last series of the dataset). The values are scanned first to size the grid
+     * for their time span and, in linear mode, to spread it over their range.
+     */
+    private static HeatmapGrid createHeatmapGrid(XYDataset dataset) {
+        int series = dataset.getSeriesCount() - 1;
+        HeatmapGrid grid;
+        if (heatmapLogScale) {
+            grid = new HeatmapGrid(heatmapBucket, true);
+        } else {
+            double min = Double.NaN;
+            double max = Double.NaN;
+            for (int n = 0; n < dataset.getItemCount(series); n++) {
+                double value = dataset.getYValue(series, n);
+                if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                    min = Double.isNaN(min) ? value : Math.min(min, value);
+                    max = Double.isNaN(max) ? value : Math.max(max, value);
+                }
+            }
+            grid = new HeatmapGrid(heatmapBucket, min, max);
+        }
+        double first = Double.NaN;
+        double last = Double.NaN;
+        for (int n = 0; n < dataset.getItemCount(series); n++) {
+            double time = dataset.getXValue(series, n);
+            if (!Double.isNaN(time) && !Double.isInfinite(time) && !Double.isNaN(dataset.getYValue(series, n))) {
+                first = Double.isNaN(first) ? time : Math.min(first, time);
+                last = Double.isNaN(last) ? time : Math.max(last, time);
+            }
+        }
+        grid.expectTimeSpan(last - first);
+        for (int n = 0; n < dataset.getItemCount(series); n++) {
+            grid.add(dataset.getXValue(series, n), dataset.getYValue(series, n));
+        }
+        return grid;
+    }
+
+    /**
+     * Wall clock time of each row. Rows without timestamp (jstat prints the JVM uptime, vmstat without -t prints nothing) are placed from the
+     * closest row with timestamp or, if there is none, assuming the capture ended when the file was last modified.
+     */
+    private static long[] getWallClock(String filename, SampleTable table) {
+        int rows = table.getRowCount();
+        double[] time = table.getTime();
+        long[] wallClock = new long[rows];
+
+        Long start = captureStarts.get(filename);
+        if (start != null) {
+            for (int n = 0; n < rows; n++) {
+                wallClock[n] = start.longValue() + Math.round((time[n] - time[0]) * 1000);
+            }
+            return wallClock;
+        }
+
+        System.arraycopy(table.getWallClock(), 0, wallClock, 0, rows);
+
+        int known = -1;
+        for (int n = 0; n < rows && known < 0; n++) {
+            if (wallClock[n] >= 0) {
+                known = n;
+            }
+        }
+        if (known < 0) {
+            logger.warn("No timestamps in " + filename + ", aligned assuming the capture ended at the modification time of the file."
+                    + " Copied files lose it, give the start of the capture as " + filename + "@" + CAPTURE_START_FORMAT.replaceAll("'", ""));
+            known = rows - 1;
+            wallClock[known] = new File(filename).lastModified();
+        }
+
+        for (int n = known - 1; n >= 0; n--) {
+            wallClock[n] = wallClock[known] - Math.round((time[known] - time[n]) * 1000);
+        }
+        for (int n = known + 1; n < rows; n++) {
+            if (wallClock[n] < 0) {
+                wallClock[n] = wallClock[known] + Math.round((time[n] - time[known]) * 1000);
+            } else {
+                known = n;
+            }
+        }
+        return wallClock;
+    }
+
+    /**
+     * @return the time in milliseconds, or null if the text is not a date like 2026-10-19T12:00:00 (local time)
+     */
+    private static Long parseCaptureStart(String text) {
+        SimpleDateFormat format = new SimpleDateFormat(CAPTURE_START_FORMAT);
+        format.setLenient(false);
+        ParsePosition position = new ParsePosition(0);
+        Date date = format.parse(text, position);
+        return date == null || position.getIndex() != text.length() ? null : Long.valueOf(date.getTime());
+    }
+
+    /**
+     * @return the values of a numeric column of the table (or the derivative of a counter, for "#d/dt" categories), or null
+     */
+    private static double[] getCombinedValues(SampleTable table, String category) {
+        boolean derivative = category.endsWith("#d/dt");
+        int column = table.indexOf(derivative ? category.substring(0, category.length() - "#d/dt".length()) : category);
+        if (column < 0 || !table.isNumeric(column)) {
+            return null;
+        }
+        return derivative ? diffOperator(table.getValues(column)) : table.getValues(column);
+    }
+
+    /**
+     * Categories of sysstat files are named after the entity and the metric ("cpu3.%usr"), the metric decides if it is selected.
+     */
+    private static boolean isSelected(String category) {
+        if (selectedCategories.contains(category) || selectedSysstatCategories.contains(category)) {
+            // sysstat metrics without entity, like runq-sz or cswch/s
+            return true;
+        }
+        int dot = category.lastIndexOf('.');
+        return dot > 0 && selectedSysstatCategories.contains(category.substring(dot + 1));
+    }
+
+    private static String getTitle(String category) {
+        String title = categoriesTranslator.get(category);
+        int dot = category.lastIndexOf('.');
+        if (title == null && dot > 0) {
+            String metric = categoriesTranslator.get(category.substring(dot + 1));
+            title = category.substring(0, dot) + ": " + (metric == null ? category.substring(dot + 1) : metric);
+        }
+        return title;
     }
 
     private static double[] diffOperator(double[] valueData) {
@@ -498,14 +996,22 @@ public class Report {
         return diffResult;
     }
 
-    private static double[] runningAverage(double[] valueData) {
+    static double[] runningAverage(double[] valueData) {
         if (valueData.length <= 0) { throw new IllegalArgumentException("At leat one element is required to calculate an average."); }
 
         double[] runningAverage = new double[valueData.length];
         runningAverage[0] = valueData[0];
+        int samples = Double.isNaN(valueData[0]) ? 0 : 1;
 
         for (int n = 1; n < valueData.length; n++) {
-            runningAverage[n] = runningAverage[n - 1] + (valueData[n] - runningAverage[n - 1]) / (n + 1);
+            // missing values (NaN) do not count for the average
+            if (Double.isNaN(valueData[n])) {
+                runningAverage[n] = runningAverage[n - 1];
+            } else if (samples++ == 0) {
+                runningAverage[n] = valueData[n];
+            } else {
+                runningAverage[n] = runningAverage[n - 1] + (valueData[n] - runningAverage[n - 1]) / samples;
+            }
         }
 
         return runningAverage;
@@ -521,16 +1027,27 @@ public class Report {
             return;
         }
 
-        double min = values[0];
-        double max = values[0];
-        double average = values[0];
+        // columns of entities that show up during the capture start with NaN
+        int first = 0;
+        while (first < values.length && Double.isNaN(values[first])) {
+            first++;
+        }
+        if (first == values.length) {
+            logger.warn("Cannot write stat file for " + category + ": No valid values.");
+            return;
+        }
+
+        double min = values[first];
+        double max = values[first];
+        double average = values[first];
         double stdev = 0;
         double stdev2 = 0;
         double sum = 0;
         int samples = 1;
 
-        for (double d; samples < values.length; samples++) {
-            if ((d = values[samples]) == Double.NaN) {
+        for (int i = first + 1; i < values.length; i++) {
+            double d = values[i];
+            if (Double.isNaN(d)) {
                 continue;
             }
             if (d < min) {
@@ -550,6 +1067,7 @@ public class Report {
             } else {
                 stdev2 = ((1.0 - 1.0 / (samples - 1)) * stdev2) + samples * diffAvg * diffAvg;
             }
+            samples++;
         }
         stdev = Math.sqrt(stdev2);
 
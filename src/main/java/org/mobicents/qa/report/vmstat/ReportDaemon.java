@@ -0,0 +1,187 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.encoders.KeypointPNGEncoderAdapter;
+import org.jfree.data.xy.DefaultXYDataset;
+
+/**
+ * Watches a directory and writes the report of each .csv file dropped in it, next to the file.
+ *
+ * The directory is scanned periodically. A file is complete when its size and modification time did not change between two scans and it was
+ * not modified for a while. Complete files are queued to a pool of workers. The queue is bounded: when it is full, files stay pending and are
+ * queued in a later scan. A failure only affects its own file, which is not retried until it is modified again.
+ */
+public class ReportDaemon {
+
+    private static Logger logger = Logger.getLogger(ReportDaemon.class.getName());
+
+    public static final long SCAN_INTERVAL = 2000;
+
+    public static final long QUIET_PERIOD = 5000;
+
+    private static class Candidate {
+        long size;
+        long lastModified;
+    }
+
+    private File directory;
+
+    private ThreadPoolExecutor workers;
+
+    private ScheduledExecutorService scanner;
+
+    // files seen in the last scan, still being written or waiting for a worker
+    private Map<String, Candidate> pending = new HashMap<String, Candidate>();
+
+    // modification time of the files already queued, reported or failed
+    private Map<String, Long> handled = new HashMap<String, Long>();
+
+    public ReportDaemon(File directory, int threads) {
+        this.directory = directory;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads * 2));
+        this.scanner = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Warms up the JVM and starts scanning the directory.
+     */
+    public void start() {
+        long start = System.currentTimeMillis();
+        warmUp();
+        logger.info("Warm up done in " + (System.currentTimeMillis() - start) + " ms");
+
+        scanner.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    scan();
+                } catch (Throwable t) {
+                    logger.error("Error scanning " + directory, t);
+                }
+            }
+        }, 0, SCAN_INTERVAL, TimeUnit.MILLISECONDS);
+        logger.info("Watching " + directory.getAbsolutePath() + " with " + workers.getCorePoolSize() + " workers");
+    }
+
+    public void stop() {
+        scanner.shutdownNow();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loads AWT, fonts, JFreeChart and the png encoder by rendering a small chart, so the first report does not pay for it.
+     */
+    private void warmUp() {
+        try {
+            DefaultXYDataset dataset = new DefaultXYDataset();
+            dataset.addSeries("warm up", new double[][] { { 0, 1, 2 }, { 0, 1, 0 } });
+            JFreeChart chart = new LineChartBuilder("warm up", "seconds", "warm up", dataset).createChart();
+            BufferedImage image = chart.createBufferedImage(160, 80);
+            new KeypointPNGEncoderAdapter().encode(image, new ByteArrayOutputStream());
+        } catch (Exception e) {
+            // only the first report gets slower
+            logger.warn("Warm up failed: " + e);
+        }
+    }
+
+    private void scan() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+
+            public boolean accept(File file, String s) {
+                return s.endsWith(".csv");
+            }
+        });
+        if (files == null) {
+            logger.warn("Cannot list directory " + directory);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Set<String> listed = new HashSet<String>();
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            listed.add(path);
+            long lastModified = file.lastModified();
+            long size = file.length();
+
+            Long handledModified = handled.get(path);
+            if (handledModified != null && handledModified.longValue() == lastModified) {
+                continue;
+            }
+            File report = new File(path.replaceAll(".csv", ".pdf"));
+            if (handledModified == null && report.lastModified() >= lastModified) {
+                // reported before the daemon started
+                handled.put(path, Long.valueOf(lastModified));
+                continue;
+            }
+
+            Candidate candidate = pending.get(path);
+            if (candidate == null || candidate.size != size || candidate.lastModified != lastModified || now - lastModified < QUIET_PERIOD) {
+                // still being written
+                if (candidate == null) {
+                    candidate = new Candidate();
+                    pending.put(path, candidate);
+                }
+                candidate.size = size;
+                candidate.lastModified = lastModified;
+                continue;
+            }
+
+            try {
+                workers.execute(new ReportTask(path));
+            } catch (RejectedExecutionException e) {
+                logger.debug("Workers busy, " + path + " stays pending");
+                continue;
+            }
+            pending.remove(path);
+            handled.put(path, Long.valueOf(lastModified));
+            logger.info("Queued " + path);
+        }
+
+        // forget the files that were deleted
+        pending.keySet().retainAll(listed);
+        handled.keySet().retainAll(listed);
+    }
+
+    private static class ReportTask implements Runnable {
+        private String filename;
+
+        ReportTask(String filename) {
+            this.filename = filename;
+        }
+
+        public void run() {
+            long start = System.currentTimeMillis();
+            try {
+                if (Report.createReports(filename)) {
+                    logger.info("Reported " + filename + " in " + (System.currentTimeMillis() - start) + " ms");
+                } else {
+                    logger.error("Failed to report " + filename + ", see the messages above");
+                }
+            } catch (Throwable t) {
+                // keep the worker alive, the file will be tried again if it changes
+                logger.error("Failed to report " + filename, t);
+            }
+        }
+    }
+}
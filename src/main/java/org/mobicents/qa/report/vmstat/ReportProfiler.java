@@ -0,0 +1,255 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+
+/**
+ * Collects wall time, CPU time, allocated bytes and throughput for each stage of the report pipeline.
+ *
+ * A phase can be started and stopped several times (e.g. once per category), the values are accumulated. Measures are taken on the calling
+ * thread, so one instance must be used by one thread only. Work done by other threads is measured by profilers of their own, and added with
+ * {@link #addWorkers(String, List)}.
+ */
+public class ReportProfiler {
+
+    private static Logger logger = Logger.getLogger(ReportProfiler.class.getName());
+
+    private static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    // com.sun.management.ThreadMXBean is not available in every JVM, look it up once. The methods are taken from the public interface, the
+    // implementation class is not accessible from other modules.
+    private static Method allocatedBytesMethod;
+
+    static {
+        try {
+            Class<?> sunThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+            if (sunThreadMXBean.isInstance(threadMXBean)) {
+                Method method = sunThreadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+                Method enabled = sunThreadMXBean.getMethod("isThreadAllocatedMemoryEnabled");
+                if (Boolean.TRUE.equals(enabled.invoke(threadMXBean))) {
+                    allocatedBytesMethod = method;
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("Thread allocated bytes not supported by this JVM: " + e.getMessage());
+        }
+    }
+
+    public static class Phase {
+        private String name;
+        private String unit;
+        private int invocations;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long items;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public int getInvocations() {
+            return invocations;
+        }
+
+        public double getWallMillis() {
+            return wallNanos / 1000000.0;
+        }
+
+        public double getCpuMillis() {
+            return cpuNanos < 0 ? -1 : cpuNanos / 1000000.0;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public double getItemsPerSecond() {
+            return wallNanos > 0 ? items * 1000000000.0 / wallNanos : 0;
+        }
+    }
+
+    private Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+
+    private Map<String, long[]> running = new LinkedHashMap<String, long[]>();
+
+    private long threadId = Thread.currentThread().getId();
+
+    public void start(String phase) {
+        running.put(phase, new long[] { System.nanoTime(), cpuTime(), allocatedBytes() });
+    }
+
+    public void stop(String phase) {
+        stop(phase, 0, null);
+    }
+
+    public void stop(String phase, long items, String unit) {
+        long[] start = running.remove(phase);
+        if (start == null) {
+            logger.warn("Phase " + phase + " stopped without being started.");
+            return;
+        }
+        long wall = System.nanoTime() - start[0];
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+
+        Phase p = phases.get(phase);
+        if (p == null) {
+            p = new Phase(phase);
+            phases.put(phase, p);
+        }
+        p.invocations++;
+        p.wallNanos += wall;
+        p.cpuNanos = (cpu < 0 || start[1] < 0 || p.cpuNanos < 0) ? -1 : p.cpuNanos + (cpu - start[1]);
+        p.allocatedBytes = (allocated < 0 || start[2] < 0 || p.allocatedBytes < 0) ? -1 : p.allocatedBytes + (allocated - start[2]);
+        p.items += items;
+        if (unit != null) {
+            p.unit = unit;
+        }
+    }
+
+    /**
+     * Adds the CPU time and allocated bytes that other threads spent for a phase, measured by their own profilers. The wall time of the phase
+     * stays the one of this thread. Call it after the phase is stopped.
+     */
+    public void addWorkers(String phase, List<ReportProfiler> workers) {
+        Phase p = phases.get(phase);
+        if (p == null) {
+            logger.warn("Phase " + phase + " not measured, cannot add the work of other threads.");
+            return;
+        }
+        for (ReportProfiler worker : workers) {
+            Phase w = worker.phases.get(phase);
+            if (w == null) {
+                continue;
+            }
+            p.cpuNanos = (p.cpuNanos < 0 || w.cpuNanos < 0) ? -1 : p.cpuNanos + w.cpuNanos;
+            p.allocatedBytes = (p.allocatedBytes < 0 || w.allocatedBytes < 0) ? -1 : p.allocatedBytes + w.allocatedBytes;
+        }
+    }
+
+    public List<Phase> getPhases() {
+        return new ArrayList<Phase>(phases.values());
+    }
+
+    public static boolean isAllocationSupported() {
+        return allocatedBytesMethod != null;
+    }
+
+    private long cpuTime() {
+        if (!threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            return -1;
+        }
+        return threadMXBean.getCurrentThreadCpuTime();
+    }
+
+    private long allocatedBytes() {
+        if (allocatedBytesMethod == null) {
+            return -1;
+        }
+        try {
+            return ((Long) allocatedBytesMethod.invoke(threadMXBean, Long.valueOf(threadId))).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes the collected phases as a JSON document.
+     */
+    public void writeJson(String jsonFileName, String inputFileName, String reportFileName) throws IOException {
+        NumberFormat formatter = new DecimalFormat("0.000", new DecimalFormatSymbols(Locale.US));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"input\": ").append(quote(inputFileName)).append(",\n");
+        sb.append("  \"report\": ").append(quote(reportFileName)).append(",\n");
+        sb.append("  \"cpuTimeSupported\": ").append(threadMXBean.isCurrentThreadCpuTimeSupported()).append(",\n");
+        sb.append("  \"allocationSupported\": ").append(isAllocationSupported()).append(",\n");
+        sb.append("  \"phases\": [");
+        boolean first = true;
+        for (Phase p : phases.values()) {
+            sb.append(first ? "\n" : ",\n");
+            first = false;
+            sb.append("    { \"name\": ").append(quote(p.name));
+            sb.append(", \"invocations\": ").append(p.invocations);
+            sb.append(", \"wallMillis\": ").append(formatter.format(p.getWallMillis()));
+            sb.append(", \"cpuMillis\": ").append(formatter.format(p.getCpuMillis()));
+            sb.append(", \"allocatedBytes\": ").append(p.allocatedBytes);
+            sb.append(", \"items\": ").append(p.items);
+            sb.append(", \"unit\": ").append(p.unit == null ? "null" : quote(p.unit));
+            sb.append(", \"itemsPerSecond\": ").append(formatter.format(p.getItemsPerSecond()));
+            sb.append(" }");
+        }
+        sb.append("\n  ]\n}\n");
+
+        FileOutputStream fos = new FileOutputStream(jsonFileName);
+        try {
+            fos.write(sb.toString().getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+
+    private static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Adds a "report generation profile" page with a table of the phases measured so far.
+     */
+    public void writePage(Document document) throws DocumentException {
+        NumberFormat formatter = new DecimalFormat("#,##0.0", new DecimalFormatSymbols(Locale.US));
+
+        String[] headers = new String[] { "Phase", "Calls", "Wall (ms)", "CPU (ms)", "Allocated (KB)", "Items", "Items/s" };
+        List<String[]> rows = new ArrayList<String[]>();
+        for (Phase p : phases.values()) {
+            rows.add(new String[] { p.name, String.valueOf(p.invocations), formatter.format(p.getWallMillis()),
+                    p.cpuNanos < 0 ? "n/a" : formatter.format(p.getCpuMillis()), p.allocatedBytes < 0 ? "n/a" : formatter.format(p.allocatedBytes / 1024.0),
+                    p.unit == null ? String.valueOf(p.items) : p.items + " " + p.unit, p.unit == null ? "" : formatter.format(p.getItemsPerSecond()) });
+        }
+        TablePage.write(document, "Report generation profile", headers, rows);
+    }
+}
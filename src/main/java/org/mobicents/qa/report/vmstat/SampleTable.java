@@ -0,0 +1,358 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Numeric column model filled by the input formats while the file is read.
+ *
+ * Values are stored as doubles as soon as they are parsed, so the text of the file is never kept in memory. Rows are kept in ascending time
+ * order. Columns can be added at any time (e.g. when a new CPU or disk shows up), previous rows get NaN for them.
+ *
+ * While the file is read each column only stores the rows from its first to its last value, so entities that live for a short time (like the
+ * processes of pidstat) do not cost a value for each row of the capture. The rows outside are NaN. A column is expanded to all the rows when
+ * its values are read.
+ */
+public class SampleTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int INITIAL_COLUMN_CAPACITY = 16;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte NUMERIC = 1;
+    private static final byte INVALID = 2;
+
+    private String formatName;
+
+    private double period;
+
+    private static class Column {
+        String name;
+        byte type = UNKNOWN;
+        String invalidSample;
+        // values[0] is the value of row start, the rows from start + length on are NaN
+        int start;
+        int length;
+        double[] values = new double[INITIAL_COLUMN_CAPACITY];
+    }
+
+    private Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private List<Column> columns = new ArrayList<Column>();
+
+    private double[] time = new double[INITIAL_CAPACITY];
+    private long[] wallClock = new long[INITIAL_CAPACITY];
+    private boolean hasWallClock = false;
+
+    private int rows = 0;
+    private int currentRow = -1;
+
+    /**
+     * @param period
+     *            seconds between samples, used when the input does not carry its own timestamps
+     */
+    public SampleTable(double period) {
+        this.period = period;
+    }
+
+    public double getPeriod() {
+        return period;
+    }
+
+    public String getFormatName() {
+        return formatName;
+    }
+
+    public void setFormatName(String formatName) {
+        this.formatName = formatName;
+    }
+
+    /**
+     * Appends a row at period * n seconds.
+     */
+    public int addRow() {
+        return addRow(period * rows, -1);
+    }
+
+    /**
+     * Appends a row at period * n seconds with a known wall clock time.
+     */
+    public int addRow(long wallClockMillis) {
+        return addRow(period * rows, wallClockMillis);
+    }
+
+    private int addRow(double seconds, long wallClockMillis) {
+        ensureCapacity(rows + 1);
+        time[rows] = seconds;
+        wallClock[rows] = wallClockMillis;
+        hasWallClock |= wallClockMillis >= 0;
+        currentRow = rows++;
+        return currentRow;
+    }
+
+    /**
+     * Selects the row for the given time, creating it if needed. Used by formats that print the samples of one instant in several lines or
+     * sections.
+     *
+     * @param seconds
+     *            seconds since the beginning of the capture
+     * @param wallClockMillis
+     *            wall clock time of the sample, or -1 if unknown
+     */
+    public int row(double seconds, long wallClockMillis) {
+        if (rows == 0 || seconds > time[rows - 1]) {
+            return addRow(seconds, wallClockMillis);
+        }
+        if (currentRow >= 0 && time[currentRow] == seconds) {
+            return currentRow;
+        }
+
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time[mid] < seconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < rows && time[low] == seconds) {
+            currentRow = low;
+            return currentRow;
+        }
+
+        // a time missing in the previous sections, insert it
+        ensureCapacity(rows + 1);
+        int moved = rows - low;
+        System.arraycopy(time, low, time, low + 1, moved);
+        System.arraycopy(wallClock, low, wallClock, low + 1, moved);
+        time[low] = seconds;
+        wallClock[low] = wallClockMillis;
+        hasWallClock |= wallClockMillis >= 0;
+        for (Column column : columns) {
+            if (low <= column.start) {
+                column.start++;
+            } else if (low < column.start + column.length) {
+                int offset = low - column.start;
+                column.values = grow(column.values, column.length + 1, column.length);
+                System.arraycopy(column.values, offset, column.values, offset + 1, column.length - offset);
+                column.values[offset] = Double.NaN;
+                column.length++;
+            }
+        }
+        rows++;
+        currentRow = low;
+        return currentRow;
+    }
+
+    /**
+     * Sets a value in the current row. The first value of each column decides if it is numeric.
+     */
+    public void set(String column, String token) {
+        Column c = columns.get(columnIndex(column));
+        double value = parse(token);
+        if (c.type == UNKNOWN) {
+            if (Double.isNaN(value)) {
+                c.type = INVALID;
+                c.invalidSample = token;
+            } else {
+                c.type = NUMERIC;
+            }
+        }
+        put(c, currentRow, value);
+    }
+
+    public void set(String column, double value) {
+        Column c = columns.get(columnIndex(column));
+        if (c.type == UNKNOWN) {
+            c.type = NUMERIC;
+        }
+        put(c, currentRow, value);
+    }
+
+    private void put(Column column, int row, double value) {
+        if (column.length == 0) {
+            column.start = row;
+        } else if (row < column.start) {
+            // a row before the first value of the column (formats that print an instant in several sections)
+            int before = column.start - row;
+            double[] values = new double[Math.max(column.length + before, column.values.length)];
+            System.arraycopy(column.values, 0, values, before, column.length);
+            for (int n = 0; n < before; n++) {
+                values[n] = Double.NaN;
+            }
+            column.values = values;
+            column.start = row;
+            column.length += before;
+        }
+        int offset = row - column.start;
+        if (offset >= column.length) {
+            column.values = grow(column.values, offset + 1, column.length);
+            for (int n = column.length; n < offset; n++) {
+                column.values[n] = Double.NaN;
+            }
+            column.length = offset + 1;
+        }
+        column.values[offset] = value;
+    }
+
+    /**
+     * Parses a number, accepting a comma as decimal separator (sysstat uses the locale of the machine). Returns NaN if the token is not a
+     * number.
+     */
+    public static double parse(String token) {
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            if (token.indexOf(',') >= 0 && token.indexOf('.') < 0) {
+                try {
+                    return Double.parseDouble(token.replace(',', '.'));
+                } catch (NumberFormatException e2) {
+                    // fall through
+                }
+            }
+            return Double.NaN;
+        }
+    }
+
+    public static boolean isNumber(String token) {
+        return !Double.isNaN(parse(token));
+    }
+
+    private int columnIndex(String column) {
+        if (currentRow < 0) {
+            throw new IllegalStateException("No row to set " + column + " into.");
+        }
+        Integer index = indexes.get(column);
+        if (index != null) {
+            return index.intValue();
+        }
+        Column c = new Column();
+        c.name = column;
+        columns.add(c);
+        indexes.put(column, Integer.valueOf(columns.size() - 1));
+        return columns.size() - 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= time.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, time.length * 2);
+        double[] newTime = new double[newCapacity];
+        System.arraycopy(time, 0, newTime, 0, rows);
+        time = newTime;
+        long[] newWallClock = new long[newCapacity];
+        System.arraycopy(wallClock, 0, newWallClock, 0, rows);
+        wallClock = newWallClock;
+    }
+
+    /**
+     * @return the array, or a copy of its first used values with at least the given capacity
+     */
+    private static double[] grow(double[] array, int capacity, int used) {
+        if (capacity <= array.length) {
+            return array;
+        }
+        double[] newArray = new double[Math.max(capacity, array.length * 2)];
+        System.arraycopy(array, 0, newArray, 0, used);
+        return newArray;
+    }
+
+    /**
+     * Releases the spare capacity once the file has been read.
+     */
+    public void trim() {
+        if (time.length == rows) {
+            return;
+        }
+        double[] newTime = new double[rows];
+        System.arraycopy(time, 0, newTime, 0, rows);
+        time = newTime;
+        long[] newWallClock = new long[rows];
+        System.arraycopy(wallClock, 0, newWallClock, 0, rows);
+        wallClock = newWallClock;
+        for (Column column : columns) {
+            if (column.values.length > column.length) {
+                double[] values = new double[column.length];
+                System.arraycopy(column.values, 0, values, 0, column.length);
+                column.values = values;
+            }
+        }
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public String[] getColumnNames() {
+        String[] names = new String[columns.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columns.get(i).name;
+        }
+        return names;
+    }
+
+    /**
+     * @return the index of the column, or -1 if there is no such column
+     */
+    public int indexOf(String column) {
+        Integer index = indexes.get(column);
+        return index == null ? -1 : index.intValue();
+    }
+
+    public boolean isNumeric(int column) {
+        return columns.get(column).type == NUMERIC;
+    }
+
+    /**
+     * @return the first value of a non numeric column
+     */
+    public String getInvalidSample(int column) {
+        return columns.get(column).invalidSample;
+    }
+
+    /**
+     * @return the values of the column, one per row (read the whole file first)
+     */
+    public double[] getValues(int column) {
+        Column c = columns.get(column);
+        if (c.start != 0 || c.length != rows || c.values.length != rows) {
+            // expanded once, later calls return the same array
+            double[] values = new double[rows];
+            for (int n = 0; n < rows; n++) {
+                values[n] = Double.NaN;
+            }
+            System.arraycopy(c.values, 0, values, c.start, Math.min(c.length, rows - c.start));
+            c.values = values;
+            c.start = 0;
+            c.length = rows;
+        }
+        return c.values;
+    }
+
+    /**
+     * @return seconds since the beginning of the capture of each row
+     */
+    public double[] getTime() {
+        return time;
+    }
+
+    public boolean hasWallClock() {
+        return hasWallClock;
+    }
+
+    /**
+     * @return the wall clock time of each row in milliseconds, -1 for rows where it is unknown
+     */
+    public long[] getWallClock() {
+        return wallClock;
+    }
+}
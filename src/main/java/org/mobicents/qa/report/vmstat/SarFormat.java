@@ -0,0 +1,16 @@
+package org.mobicents.qa.report.vmstat;
+
+/**
+ * Text output of 'sar' (one or more activities, e.g. 'sar -A'). Each activity section is merged in the same rows by time. Activities with
+ * several entities get columns like "cpu3.%user", "eth0.rxkB/s" or "dev8-0.await".
+ */
+public class SarFormat extends SysstatFormat {
+
+    public String getName() {
+        return "sar";
+    }
+
+    protected boolean acceptsHeader(String[] header) {
+        return true;
+    }
+}
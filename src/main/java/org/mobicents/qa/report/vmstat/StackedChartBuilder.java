@@ -0,0 +1,104 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.DateAxis;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.CombinedDomainXYPlot;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.Range;
+import org.jfree.data.general.DatasetUtilities;
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * Builds a chart with several plots stacked on top of each other, sharing the x axis.
+ */
+public class StackedChartBuilder implements ChartBuilder {
+
+    private String title;
+    private String xLabel;
+    private boolean dateAxis;
+
+    private List<String> labels = new ArrayList<String>();
+    private List<XYDataset> datasets = new ArrayList<XYDataset>();
+    private List<Range> rangeBounds;
+
+    private Range domainBounds;
+
+    /**
+     * @param dateAxis
+     *            true if x values are wall clock times in milliseconds, false if they are seconds
+     */
+    public StackedChartBuilder(String title, String xLabel, boolean dateAxis) {
+        this.title = title;
+        this.xLabel = xLabel;
+        this.dateAxis = dateAxis;
+    }
+
+    public void add(String label, XYDataset dataset) {
+        labels.add(label);
+        datasets.add(dataset);
+        domainBounds = null;
+    }
+
+    public int getPlotCount() {
+        return datasets.size();
+    }
+
+    public Range getDomainBounds() {
+        if (domainBounds == null) {
+            for (XYDataset dataset : datasets) {
+                Range bounds = DatasetUtilities.findDomainBounds(dataset);
+                if (bounds != null) {
+                    domainBounds = domainBounds == null ? bounds : Range.combine(domainBounds, bounds);
+                }
+            }
+        }
+        return domainBounds;
+    }
+
+    public JFreeChart createChart() {
+        return createChart(datasets, null, null);
+    }
+
+    public JFreeChart createChart(double fromX, double toX) {
+        if (rangeBounds == null) {
+            rangeBounds = new ArrayList<Range>();
+            for (XYDataset dataset : datasets) {
+                rangeBounds.add(LineChartBuilder.padRange(DatasetUtilities.findRangeBounds(dataset)));
+            }
+        }
+        List<XYDataset> slices = new ArrayList<XYDataset>();
+        for (XYDataset dataset : datasets) {
+            slices.add(LineChartBuilder.slice(dataset, fromX, toX));
+        }
+        return createChart(slices, new Range(fromX, toX), rangeBounds);
+    }
+
+    private JFreeChart createChart(List<XYDataset> data, Range domain, List<Range> ranges) {
+        ValueAxis domainAxis = dateAxis ? new DateAxis(xLabel) : new NumberAxis(xLabel);
+        CombinedDomainXYPlot plot = new CombinedDomainXYPlot(domainAxis);
+        plot.setGap(10);
+
+        for (int i = 0; i < data.size(); i++) {
+            NumberAxis rangeAxis = new NumberAxis(labels.get(i));
+            rangeAxis.setAutoRangeIncludesZero(false);
+            if (ranges != null && ranges.get(i) != null) {
+                rangeAxis.setRange(ranges.get(i));
+            }
+            plot.add(new XYPlot(data.get(i), null, rangeAxis, new XYLineAndShapeRenderer(true, false)), 1);
+        }
+        if (domain != null) {
+            domainAxis.setRange(domain);
+        }
+
+        JFreeChart chart = new JFreeChart(title, JFreeChart.DEFAULT_TITLE_FONT, plot, false);
+        ChartUtilities.applyCurrentTheme(chart);
+        return chart;
+    }
+}
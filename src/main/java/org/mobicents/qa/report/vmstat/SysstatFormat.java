@@ -0,0 +1,355 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Base class for the text output of the sysstat tools (sar, mpstat, iostat, pidstat).
+ *
+ * The files start with a "Linux ..." banner that holds the date. Each header line (a line without numbers) defines the layout of the lines
+ * that follow it: an optional time of day (or epoch seconds), an optional entity column (CPU, device, PID, ...) and the metrics. Lines of
+ * different entities for the same instant are pivoted into a single row, with columns named after the entity and the metric, like
+ * "cpu3.%usr" or "sda.await".
+ */
+public abstract class SysstatFormat implements InputFormat {
+
+    private static final Pattern TIME = Pattern.compile("\\d{1,2}:\\d{2}:\\d{2}");
+    private static final Pattern DATE = Pattern.compile("(\\d{2}/\\d{2}/\\d{2,4})|(\\d{4}-\\d{2}-\\d{2})");
+    private static final Pattern ISO_TIMESTAMP = Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}.*");
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private static final Set<String> keyColumns = new HashSet<String>(Arrays.asList(new String[] { "CPU", "DEV", "IFACE", "Device", "Device:",
+            "PID", "TGID", "TID", "INTR", "TTY", "FILESYSTEM", "BUS", "TYPE" }));
+
+    private static final Set<String> ignoredColumns = new HashSet<String>(Arrays.asList(new String[] { "UID", "USER", "Command", "MOUNTPOINT" }));
+
+    /**
+     * Columns of the lines under a header.
+     */
+    private static class Layout {
+        int timeTokens;
+        boolean epochTime;
+        String key;
+        int keyIndex = -1;
+        String prefix = "";
+        String[] metrics;
+        double lastTimeOfDay = -1;
+        int day = 0;
+    }
+
+    public boolean accepts(List<String> head) {
+        String banner = InputFormats.firstLine(head);
+        if (banner == null || !banner.startsWith("Linux")) {
+            return false;
+        }
+        for (String line : head) {
+            if (line == banner || line.trim().length() == 0) {
+                continue;
+            }
+            String[] tokens = line.trim().split("\\s+");
+            if (Double.isNaN(parseTimestamp(tokens)) && isHeader(tokens)) {
+                return acceptsHeader(tokens);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param header
+     *            the first header line of the file
+     */
+    protected abstract boolean acceptsHeader(String[] header);
+
+    protected static boolean contains(String[] tokens, String token) {
+        for (String t : tokens) {
+            if (t.equals(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void read(Reader reader, SampleTable table) throws IOException {
+        // sysstat separates columns with spaces and tabs, and never quotes them
+        BufferedReader br = new BufferedReader(reader);
+
+        long date = -1;
+        Map<String, Layout> layouts = new HashMap<String, Layout>();
+        Layout layout = null;
+        String firstSignature = null;
+        double firstTime = Double.NaN;
+        double reportTime = Double.NaN;
+        int reports = 0;
+        boolean newReport = false;
+
+        for (String text; (text = br.readLine()) != null;) {
+            text = text.trim();
+            if (text.length() == 0) {
+                continue;
+            }
+            String[] line = text.split("\\s+");
+            if (line[0].startsWith("Linux")) {
+                date = parseBanner(line);
+                continue;
+            }
+            if (line[0].endsWith(":") && !keyColumns.contains(line[0]) && !line[0].equals("avg-cpu:")) {
+                // "Average:" and "Summary:" lines
+                continue;
+            }
+
+            // iostat -t prints the time of each report in a line of its own
+            double timestamp = parseTimestamp(line);
+            if (!Double.isNaN(timestamp)) {
+                reportTime = timestamp;
+                newReport = true;
+                continue;
+            }
+
+            if (isHeader(line)) {
+                String signature = Arrays.toString(stripTime(line));
+                layout = layouts.get(signature);
+                if (layout == null) {
+                    layout = parseHeader(line);
+                    layouts.put(signature, layout);
+                }
+                if (firstSignature == null) {
+                    firstSignature = signature;
+                }
+                if (layout.timeTokens > 0 && !layout.epochTime) {
+                    // the time of the header counts to detect midnight
+                    parseTime(line, layout, date);
+                }
+                if (layout.timeTokens == 0 && signature.equals(firstSignature)) {
+                    // a new report of a tool that does not print the time in each line
+                    if (!newReport) {
+                        reportTime = Double.NaN;
+                    }
+                    newReport = true;
+                }
+                continue;
+            }
+            if (layout == null) {
+                continue;
+            }
+
+            // find the time of the line
+            double seconds;
+            if (layout.timeTokens > 0) {
+                if (line.length <= layout.timeTokens) {
+                    continue;
+                }
+                seconds = parseTime(line, layout, date);
+                if (Double.isNaN(seconds)) {
+                    continue;
+                }
+            } else if (!Double.isNaN(reportTime)) {
+                seconds = reportTime;
+            } else {
+                if (newReport) {
+                    reports++;
+                }
+                seconds = table.getPeriod() * (reports - 1);
+            }
+            newReport = false;
+
+            if (Double.isNaN(firstTime)) {
+                firstTime = seconds;
+            }
+            boolean absolute = layout.epochTime || (layout.timeTokens > 0 && date >= 0) || (layout.timeTokens == 0 && !Double.isNaN(reportTime));
+            table.row(seconds - firstTime, absolute ? Math.round(seconds * 1000) : -1);
+
+            String prefix = layout.prefix;
+            if (layout.keyIndex >= 0) {
+                if (line.length <= layout.keyIndex) {
+                    continue;
+                }
+                prefix = entityName(layout.key, line[layout.keyIndex]) + ".";
+            }
+            for (int i = layout.timeTokens; i < line.length && i < layout.metrics.length; i++) {
+                if (layout.metrics[i] != null) {
+                    table.set(prefix + layout.metrics[i], line[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A header is a line without numbers after the time.
+     */
+    private static boolean isHeader(String[] line) {
+        String[] tokens = stripTime(line);
+        if (tokens.length == 0) {
+            return false;
+        }
+        for (String token : tokens) {
+            if (SampleTable.isNumber(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] stripTime(String[] line) {
+        int start = line.length > 0 && line[0].equals("#") ? 1 : 0;
+        while (start < line.length && isTimeToken(line[start])) {
+            start++;
+        }
+        String[] tokens = new String[line.length - start];
+        System.arraycopy(line, start, tokens, 0, tokens.length);
+        return tokens;
+    }
+
+    private static boolean isTimeToken(String token) {
+        return TIME.matcher(token).matches() || "AM".equals(token) || "PM".equals(token);
+    }
+
+    private Layout parseHeader(String[] line) {
+        Layout layout = new Layout();
+
+        int start = 0;
+        if (line[0].equals("#")) {
+            // pidstat -h: "# Time UID PID ...", the time is in epoch seconds
+            String[] tokens = new String[line.length - 1];
+            System.arraycopy(line, 1, tokens, 0, tokens.length);
+            line = tokens;
+            if (line.length > 0 && line[0].equals("Time")) {
+                layout.epochTime = true;
+                start = 1;
+            }
+        }
+        while (start < line.length && isTimeToken(line[start])) {
+            start++;
+        }
+        layout.timeTokens = start;
+
+        layout.metrics = new String[line.length];
+        for (int i = start; i < line.length; i++) {
+            String token = line[i];
+            if (keyColumns.contains(token)) {
+                // the first one names the entity, the others (like the CPU of pidstat, or TID) are not metrics
+                if (layout.keyIndex < 0) {
+                    layout.key = token.endsWith(":") ? token.substring(0, token.length() - 1) : token;
+                    layout.keyIndex = i;
+                }
+                continue;
+            }
+            if (ignoredColumns.contains(token) || token.endsWith(":")) {
+                if (token.equals("avg-cpu:")) {
+                    layout.prefix = "cpu.";
+                }
+                continue;
+            }
+            layout.metrics[i] = token;
+        }
+        if (layout.prefix.length() > 0) {
+            // "avg-cpu:" is the first token of the header but not of the values
+            String[] metrics = new String[layout.metrics.length - 1];
+            System.arraycopy(layout.metrics, 1, metrics, 0, metrics.length);
+            layout.metrics = metrics;
+        }
+        return layout;
+    }
+
+    /**
+     * Column prefix for an entity: "cpu3", "cpu" for all the cpus, "sda", "eth0", "pid1234"...
+     */
+    private static String entityName(String key, String value) {
+        if (key.equals("CPU")) {
+            return value.equals("all") ? "cpu" : "cpu" + value;
+        }
+        if (key.equals("TGID")) {
+            return "pid" + value;
+        }
+        if (value.length() > 0 && Character.isLetter(value.charAt(0))) {
+            return value;
+        }
+        return key.toLowerCase() + value;
+    }
+
+    /**
+     * @return the date of the banner in milliseconds (local midnight), or -1
+     */
+    private static long parseBanner(String[] line) {
+        for (String token : line) {
+            if (DATE.matcher(token).matches()) {
+                return parseDate(token);
+            }
+        }
+        return -1;
+    }
+
+    private static long parseDate(String token) {
+        String pattern = token.indexOf('-') > 0 ? "yyyy-MM-dd" : token.length() == 8 ? "MM/dd/yy" : "MM/dd/yyyy";
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        try {
+            return format.parse(token).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static double timeOfDay(String time, String amPm) {
+        String[] fields = time.split(":");
+        int hours = Integer.parseInt(fields[0]);
+        if ("PM".equals(amPm) && hours < 12) {
+            hours += 12;
+        } else if ("AM".equals(amPm) && hours == 12) {
+            hours = 0;
+        }
+        return hours * 3600 + Integer.parseInt(fields[1]) * 60 + Integer.parseInt(fields[2]);
+    }
+
+    /**
+     * @return the time of the line in seconds (epoch seconds if the date is known), or NaN
+     */
+    private static double parseTime(String[] line, Layout layout, long date) {
+        if (layout.epochTime) {
+            return SampleTable.parse(line[0]);
+        }
+        if (!TIME.matcher(line[0]).matches()) {
+            return Double.NaN;
+        }
+        double timeOfDay = timeOfDay(line[0], layout.timeTokens > 1 ? line[1] : null);
+        if (timeOfDay < layout.lastTimeOfDay - SECONDS_PER_DAY / 2) {
+            // past midnight (headers may show the time of the previous sample, so small steps back are not)
+            layout.day++;
+        }
+        layout.lastTimeOfDay = timeOfDay;
+        return (date >= 0 ? date / 1000.0 : 0) + layout.day * SECONDS_PER_DAY + timeOfDay;
+    }
+
+    /**
+     * Parses lines with just a date and time, like "10/19/2026 12:00:01 PM" or "2026-10-19T12:00:01+0200".
+     *
+     * @return epoch seconds, or NaN if the line is not a timestamp
+     */
+    private static double parseTimestamp(String[] line) {
+        if (line.length == 1 && ISO_TIMESTAMP.matcher(line[0]).matches()) {
+            try {
+                String s = line[0].length() > 19 ? line[0] : line[0] + "+0000";
+                return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").parse(s).getTime() / 1000.0;
+            } catch (ParseException e) {
+                return Double.NaN;
+            }
+        }
+        if (line.length < 2 || line.length > 3 || !DATE.matcher(line[0]).matches() || !TIME.matcher(line[1]).matches()) {
+            return Double.NaN;
+        }
+        long date = parseDate(line[0]);
+        if (date < 0) {
+            return Double.NaN;
+        }
+        return date / 1000.0 + timeOfDay(line[1], line.length > 2 ? line[2] : null);
+    }
+}
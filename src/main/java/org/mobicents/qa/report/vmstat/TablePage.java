@@ -0,0 +1,44 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.util.List;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.FontFactory;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+
+/**
+ * Writes a page of the report with a title and a table. The first column is text, the others are right aligned.
+ */
+public class TablePage {
+
+    public static void write(Document document, String title, String[] headers, List<String[]> rows) throws DocumentException {
+        PdfPTable table = new PdfPTable(headers.length);
+        table.setWidthPercentage(90);
+        table.setHeaderRows(1);
+        for (String header : headers) {
+            PdfPCell cell = new PdfPCell(new Phrase(header, FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12)));
+            cell.setGrayFill(0.9f);
+            table.addCell(cell);
+        }
+        for (String[] row : rows) {
+            for (int i = 0; i < headers.length; i++) {
+                PdfPCell cell = new PdfPCell(new Phrase(i < row.length && row[i] != null ? row[i] : ""));
+                if (i > 0) {
+                    cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+                }
+                table.addCell(cell);
+            }
+        }
+
+        document.newPage();
+        Paragraph paragraph = new Paragraph(title, FontFactory.getFont(FontFactory.HELVETICA_BOLD, 20));
+        paragraph.setSpacingAfter(20);
+        document.add(paragraph);
+        document.add(table);
+    }
+}
@@ -0,0 +1,150 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Aligns series of several captures on wall clock time.
+ *
+ * The series are walked once, in time order, with a cursor each: for each step of the merged timeline every series gives its last sample. A
+ * sample is held until the next one, or until it is older than twice the sampling interval of its series (then the value is missing).
+ *
+ * Series that do not overlap in time (e.g. captures placed by the modification time of copied files) would make a row for each step of the gap
+ * between them. Only the largest group of overlapping series is merged, the others are dropped with a warning.
+ */
+public class TimelineMerger {
+
+    private static Logger logger = Logger.getLogger(TimelineMerger.class.getName());
+
+    private static class Series {
+        String name;
+        long[] wallClock;
+        double[] values;
+        long hold;
+        int cursor = 0;
+        double last = Double.NaN;
+        long lastTime = Long.MIN_VALUE;
+    }
+
+    private long step;
+
+    private List<Series> series = new ArrayList<Series>();
+
+    /**
+     * @param step
+     *            milliseconds between the rows of the merged timeline
+     */
+    public TimelineMerger(long step) {
+        this.step = Math.max(step, 1);
+    }
+
+    /**
+     * @param wallClock
+     *            wall clock time of each value in milliseconds, in ascending order
+     */
+    public void addSeries(String name, long[] wallClock, double[] values) {
+        if (wallClock.length == 0) {
+            return;
+        }
+        Series s = new Series();
+        s.name = name;
+        s.wallClock = wallClock;
+        s.values = values;
+        long interval = wallClock.length > 1 ? (wallClock[wallClock.length - 1] - wallClock[0]) / (wallClock.length - 1) : step;
+        s.hold = 2 * Math.max(interval, step);
+        series.add(s);
+    }
+
+    public boolean isEmpty() {
+        return series.isEmpty();
+    }
+
+    /**
+     * Merges all the series into a table, from the first sample of any series to the last one.
+     */
+    public SampleTable merge() {
+        SampleTable table = new SampleTable(step / 1000.0);
+        table.setFormatName("merged");
+        if (series.isEmpty()) {
+            return table;
+        }
+
+        List<Series> merged = selectOverlapping();
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (Series s : merged) {
+            start = Math.min(start, s.wallClock[0]);
+            end = Math.max(end, s.wallClock[s.wallClock.length - 1]);
+        }
+
+        for (long time = start; time <= end; time += step) {
+            table.addRow(time);
+            for (Series s : merged) {
+                while (s.cursor < s.wallClock.length && s.wallClock[s.cursor] <= time) {
+                    s.last = s.values[s.cursor];
+                    s.lastTime = s.wallClock[s.cursor];
+                    s.cursor++;
+                }
+                boolean valid = s.lastTime != Long.MIN_VALUE && time - s.lastTime <= s.hold;
+                table.set(s.name, valid ? s.last : Double.NaN);
+            }
+        }
+        table.trim();
+        return table;
+    }
+
+    /**
+     * Groups the series whose time spans overlap (or are closer than their hold time) and returns the group with the most samples.
+     */
+    private List<Series> selectOverlapping() {
+        List<Series> sorted = new ArrayList<Series>(series);
+        Collections.sort(sorted, new Comparator<Series>() {
+            public int compare(Series a, Series b) {
+                return a.wallClock[0] < b.wallClock[0] ? -1 : a.wallClock[0] > b.wallClock[0] ? 1 : 0;
+            }
+        });
+
+        List<List<Series>> groups = new ArrayList<List<Series>>();
+        List<Series> group = null;
+        long groupEnd = Long.MIN_VALUE;
+        for (Series s : sorted) {
+            if (group == null || s.wallClock[0] > groupEnd + s.hold) {
+                group = new ArrayList<Series>();
+                groups.add(group);
+            }
+            group.add(s);
+            groupEnd = Math.max(groupEnd, s.wallClock[s.wallClock.length - 1]);
+        }
+        if (groups.size() == 1) {
+            return sorted;
+        }
+
+        List<Series> largest = null;
+        long largestSamples = -1;
+        for (List<Series> g : groups) {
+            long samples = 0;
+            for (Series s : g) {
+                samples += s.wallClock.length;
+            }
+            if (samples > largestSamples) {
+                largest = g;
+                largestSamples = samples;
+            }
+        }
+        for (List<Series> g : groups) {
+            if (g == largest) {
+                continue;
+            }
+            long distance = Math.abs(g.get(0).wallClock[0] - largest.get(0).wallClock[0]) / 1000;
+            for (Series s : g) {
+                logger.warn("Series " + s.name + " starts " + distance + " s away from " + largest.get(0).name
+                        + " and does not overlap with it, dropped from the combined report");
+            }
+        }
+        return largest;
+    }
+}
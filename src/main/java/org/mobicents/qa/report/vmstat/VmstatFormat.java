@@ -0,0 +1,62 @@
+package org.mobicents.qa.report.vmstat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+
+/**
+ * Output of 'vmstat -n -a -t'. The first header line ("procs -----memory-----...") is skipped, headers repeated by vmstat without -n are
+ * ignored. With -t the last column is the timestamp of the sample.
+ */
+public class VmstatFormat implements InputFormat {
+
+    public String getName() {
+        return "vmstat";
+    }
+
+    public boolean accepts(List<String> head) {
+        String line = InputFormats.firstLine(head);
+        if (line == null) {
+            return false;
+        }
+        line = line.trim();
+        return line.startsWith("procs") || (line.startsWith("r ") && line.indexOf(" swpd ") > 0);
+    }
+
+    public void read(Reader reader, SampleTable table) throws IOException {
+        OpenCsvReader csv = new OpenCsvReader(reader, ' ', '\"');
+        SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        String[] categories = null;
+        for (String[] line; (line = csv.readNext()) != null;) {
+            if (line.length == 0 || line[0].startsWith("procs")) {
+                continue;
+            }
+            if (!SampleTable.isNumber(line[0])) {
+                // vmstat prints an extra header line that starts with "procs". The one after it names the columns.
+                categories = line;
+                continue;
+            }
+            if (categories == null) {
+                throw new IOException("vmstat values without header");
+            }
+
+            long wallClock = -1;
+            if (line.length == categories.length + 1) {
+                // the timestamp has a date and a time, but its header is just the time zone
+                try {
+                    wallClock = timestampFormat.parse(line[line.length - 2] + " " + line[line.length - 1]).getTime();
+                } catch (ParseException e) {
+                    // no timestamp
+                }
+            }
+
+            table.addRow(wallClock);
+            for (int i = 0; i < categories.length && i < line.length; i++) {
+                table.set(categories[i], line[i]);
+            }
+        }
+    }
+}